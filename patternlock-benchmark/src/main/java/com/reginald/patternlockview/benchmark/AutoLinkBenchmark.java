@@ -0,0 +1,67 @@
+package com.reginald.patternlockview.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reginald.patternlockview.PatternGrid;
+
+/**
+ * building the auto-link table and looking up the mid nodes of two nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutoLinkBenchmark {
+    private static final int PAIR_COUNT = 1024;
+
+    @Param({"3", "4", "5", "8", "12", "16"})
+    public int size;
+
+    private PatternGrid mGrid;
+    private int[] mPairs;
+    private int[] mMidNodes;
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        mGrid = new PatternGrid(size);
+        mMidNodes = new int[mGrid.getMaxMidNodeCount()];
+        Random random = new Random(size);
+        mPairs = new int[PAIR_COUNT * 2];
+        for (int i = 0; i < mPairs.length; i++) {
+            mPairs[i] = random.nextInt(mGrid.getTotalSize());
+        }
+    }
+
+    @Benchmark
+    public PatternGrid buildGrid() {
+        return new PatternGrid(size);
+    }
+
+    @Benchmark
+    public int midNodes() {
+        int i = mIndex;
+        mIndex = (i + 2) & (PAIR_COUNT * 2 - 1);
+        int count = mGrid.getMidNodes(mPairs[i], mPairs[i + 1], mMidNodes);
+        int sum = 0;
+        for (int m = 0; m < count; m++) {
+            sum += mMidNodes[m];
+        }
+        return sum;
+    }
+}
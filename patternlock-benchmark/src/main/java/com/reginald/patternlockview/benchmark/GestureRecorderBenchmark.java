@@ -0,0 +1,73 @@
+package com.reginald.patternlockview.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reginald.patternlockview.GestureRecorder;
+
+/**
+ * recording a touch sample on the UI thread, and recording and encoding a gesture of
+ * 64 move samples and 9 node commits.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GestureRecorderBenchmark {
+    private static final int GESTURE_SAMPLES = 64;
+    private static final int GESTURE_NODES = 9;
+
+    private GestureRecorder mRecorder;
+    private ByteBuffer mBuffer;
+    private long mTime;
+
+    @Setup
+    public void setup() {
+        mRecorder = new GestureRecorder(4096);
+        mBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    }
+
+    /**
+     * recording only, the buffer is drained when it's full so no record is dropped
+     */
+    @Benchmark
+    public long recordTouch() {
+        GestureRecorder recorder = mRecorder;
+        if (recorder.getPendingCount() == recorder.getCapacity()) {
+            mBuffer.clear();
+            recorder.drainTo(mBuffer);
+        }
+        long time = mTime++;
+        recorder.recordTouch(time, 2, (time & 1023) * 1.5f, (time & 511) * 2f);
+        return time;
+    }
+
+    @Benchmark
+    public int recordAndDrainGesture() {
+        GestureRecorder recorder = mRecorder;
+        long time = mTime;
+        for (int i = 0; i < GESTURE_SAMPLES; i++) {
+            recorder.recordTouch(time + i * 8, i == 0 ? 0 : 2, 100f + i * 12.5f, 300f + i * 6.25f);
+            if (i % (GESTURE_SAMPLES / GESTURE_NODES) == 0) {
+                recorder.recordNode(time + i * 8, i / (GESTURE_SAMPLES / GESTURE_NODES));
+            }
+        }
+        recorder.recordFinish(time + GESTURE_SAMPLES * 8, 1);
+        mTime = time + 1000;
+        mBuffer.clear();
+        return recorder.drainTo(mBuffer);
+    }
+}
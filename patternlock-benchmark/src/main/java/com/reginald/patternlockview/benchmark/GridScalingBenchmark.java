@@ -0,0 +1,126 @@
+package com.reginald.patternlockview.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reginald.patternlockview.PatternGrid;
+import com.reginald.patternlockview.PatternLayout;
+
+/**
+ * how the per-frame work scales with rectangular and large grids, up to 32 * 32 nodes.
+ * per-frame operations (hit testing, auto link) should stay flat as the grid grows,
+ * only one-off setup (grid, measure and layout) is expected to grow with the node count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridScalingBenchmark {
+    private static final int SAMPLE_COUNT = 1024;
+
+    /**
+     * rows x columns
+     */
+    @Param({"3x3", "4x6", "8x8", "12x16", "16x16", "24x24", "32x32"})
+    public String grid;
+
+    private int mRowCount;
+    private int mColumnCount;
+    private PatternGrid mGrid;
+    private PatternLayout mLayout;
+    private float[] mPoints;
+    private int[] mPairs;
+    private int[] mHitNodes;
+    private int[] mMidNodes;
+    private int[] mPassword;
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        String[] size = grid.split("x");
+        mRowCount = Integer.parseInt(size[0]);
+        mColumnCount = Integer.parseInt(size[1]);
+        mGrid = new PatternGrid(mRowCount, mColumnCount);
+        mLayout = newLayout();
+        mHitNodes = new int[mGrid.getTotalSize()];
+        mMidNodes = new int[mGrid.getMaxMidNodeCount()];
+
+        Random random = new Random(mGrid.getTotalSize());
+        mPoints = new float[SAMPLE_COUNT * 2];
+        mPairs = new int[SAMPLE_COUNT * 2];
+        for (int i = 0; i < SAMPLE_COUNT * 2; i++) {
+            mPoints[i] = random.nextFloat() * HitTestBenchmark.VIEW_SIZE;
+            mPairs[i] = random.nextInt(mGrid.getTotalSize());
+        }
+        mPassword = new int[mGrid.getTotalSize()];
+        for (int i = 0; i < mPassword.length; i++) {
+            mPassword[i] = i;
+        }
+    }
+
+    private PatternLayout newLayout() {
+        PatternLayout layout = new PatternLayout();
+        layout.setGrid(mGrid);
+        layout.setNodeSize(HitTestBenchmark.VIEW_SIZE / Math.max(mRowCount, mColumnCount) / 2f);
+        layout.setNodeAreaExpand(4f);
+        layout.measure(HitTestBenchmark.VIEW_SIZE, true, HitTestBenchmark.VIEW_SIZE, true);
+        layout.layout(layout.getMeasuredWidth(), layout.getMeasuredHeight());
+        return layout;
+    }
+
+    @Benchmark
+    public PatternGrid buildGrid() {
+        return new PatternGrid(mRowCount, mColumnCount);
+    }
+
+    @Benchmark
+    public PatternLayout measureAndLayout() {
+        return newLayout();
+    }
+
+    @Benchmark
+    public int getNodeAt() {
+        int i = mIndex;
+        mIndex = (i + 2) & (SAMPLE_COUNT * 2 - 1);
+        return mLayout.getNodeAt(mPoints[i], mPoints[i + 1]);
+    }
+
+    /**
+     * a short segment between two touch events
+     */
+    @Benchmark
+    public int getNodesOnPath() {
+        int i = mIndex;
+        mIndex = (i + 2) & (SAMPLE_COUNT * 2 - 1);
+        float x = mPoints[i];
+        float y = mPoints[i + 1];
+        return mLayout.getNodesOnPath(x, y, x + 40f, y + 25f, mHitNodes);
+    }
+
+    @Benchmark
+    public int midNodes() {
+        int i = mIndex;
+        mIndex = (i + 2) & (SAMPLE_COUNT * 2 - 1);
+        return mGrid.getMidNodes(mPairs[i], mPairs[i + 1], mMidNodes);
+    }
+
+    @Benchmark
+    public int[] validatePassword() {
+        mGrid.ensureValidPassword(mPassword);
+        return mPassword;
+    }
+}
@@ -0,0 +1,97 @@
+package com.reginald.patternlockview.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reginald.patternlockview.PatternGrid;
+import com.reginald.patternlockview.PatternLayout;
+
+/**
+ * hit testing of a single touch point and of a segment of the finger path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitTestBenchmark {
+    static final int VIEW_SIZE = 1080;
+    private static final int POINT_COUNT = 1024;
+
+    @Param({"3", "4", "5", "8", "12", "16"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean circle;
+
+    private PatternLayout mLayout;
+    private float[] mPoints;
+    private int[] mHitNodes;
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        mLayout = newLayout(size);
+        mLayout.setNodeAreaExpand(mLayout.getMeasuredNodeSize() / 4f);
+        mLayout.setNodeTouchCircle(circle);
+        mHitNodes = new int[size * size];
+
+        Random random = new Random(size);
+        mPoints = new float[POINT_COUNT * 2];
+        for (int i = 0; i < mPoints.length; i++) {
+            mPoints[i] = random.nextFloat() * VIEW_SIZE;
+        }
+    }
+
+    /**
+     * @return a layout of the given size measured and laid out in a square view of {@link #VIEW_SIZE}
+     */
+    static PatternLayout newLayout(int size) {
+        PatternLayout layout = new PatternLayout();
+        layout.setGrid(new PatternGrid(size));
+        layout.setNodeSize(VIEW_SIZE / size / 2f);
+        layout.measure(VIEW_SIZE, true, VIEW_SIZE, true);
+        layout.layout(layout.getMeasuredWidth(), layout.getMeasuredHeight());
+        return layout;
+    }
+
+    @Benchmark
+    public int getNodeAt() {
+        int i = mIndex;
+        mIndex = (i + 2) & (POINT_COUNT * 2 - 1);
+        return mLayout.getNodeAt(mPoints[i], mPoints[i + 1]);
+    }
+
+    /**
+     * a short segment between two touch events
+     */
+    @Benchmark
+    public int getNodesOnPath() {
+        int i = mIndex;
+        mIndex = (i + 2) & (POINT_COUNT * 2 - 1);
+        float x = mPoints[i];
+        float y = mPoints[i + 1];
+        return mLayout.getNodesOnPath(x, y, x + 40f, y + 25f, mHitNodes);
+    }
+
+    /**
+     * the diagonal of the whole view, the worst case of a fast swipe
+     */
+    @Benchmark
+    public int getNodesOnDiagonal() {
+        return mLayout.getNodesOnPath(0f, 0f, VIEW_SIZE, VIEW_SIZE, mHitNodes);
+    }
+}
@@ -0,0 +1,71 @@
+package com.reginald.patternlockview.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reginald.patternlockview.PatternGrid;
+import com.reginald.patternlockview.PatternLayout;
+
+/**
+ * measure and layout passes, in both layout modes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+    @Param({"3", "4", "5", "8", "12", "16"})
+    public int size;
+
+    /**
+     * spacing between nodes, -1 means Identical-Area mode
+     */
+    @Param({"-1", "20"})
+    public float spacing;
+
+    private PatternLayout mLayout;
+    private int mWidthOffset;
+
+    @Setup
+    public void setup() {
+        mLayout = new PatternLayout();
+        mLayout.setGrid(new PatternGrid(size));
+        mLayout.setNodeSize(HitTestBenchmark.VIEW_SIZE / size / 2f);
+        mLayout.setPadding(20);
+        mLayout.setSpacing(spacing);
+    }
+
+    /**
+     * the width changes on every pass, so nothing is reused
+     */
+    @Benchmark
+    public int[] measureAndLayout() {
+        mWidthOffset ^= 1;
+        mLayout.measure(HitTestBenchmark.VIEW_SIZE - mWidthOffset, true, HitTestBenchmark.VIEW_SIZE * 2, false);
+        mLayout.layout(mLayout.getMeasuredWidth(), mLayout.getMeasuredHeight());
+        return mLayout.getNodeBounds();
+    }
+
+    /**
+     * repeated passes with the same specs, e.g. a parent measuring several times per frame
+     */
+    @Benchmark
+    public int[] measureAndLayoutCached() {
+        mLayout.measure(HitTestBenchmark.VIEW_SIZE, true, HitTestBenchmark.VIEW_SIZE * 2, false);
+        mLayout.layout(mLayout.getMeasuredWidth(), mLayout.getMeasuredHeight());
+        return mLayout.getNodeBounds();
+    }
+}
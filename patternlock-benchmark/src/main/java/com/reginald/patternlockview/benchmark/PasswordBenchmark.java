@@ -0,0 +1,86 @@
+package com.reginald.patternlockview.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reginald.patternlockview.Pattern;
+import com.reginald.patternlockview.PatternGrid;
+
+/**
+ * building, validating, hashing and comparing a password that visits every node of the grid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasswordBenchmark {
+    @Param({"3", "4", "5", "8", "12", "16"})
+    public int size;
+
+    private PatternGrid mGrid;
+    private int[] mIds;
+    private Pattern mPattern;
+    private Pattern mSamePattern;
+
+    @Setup
+    public void setup() {
+        mGrid = new PatternGrid(size);
+        mIds = new int[mGrid.getTotalSize()];
+        for (int i = 0; i < mIds.length; i++) {
+            mIds[i] = i;
+        }
+        // shuffle with a fixed seed
+        Random random = new Random(size);
+        for (int i = mIds.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = mIds[i];
+            mIds[i] = mIds[j];
+            mIds[j] = t;
+        }
+        mPattern = new Pattern(mIds);
+        mSamePattern = new Pattern(mIds);
+    }
+
+    @Benchmark
+    public Pattern build() {
+        return new Pattern(mIds);
+    }
+
+    @Benchmark
+    public Pattern validateAndBuild() {
+        mGrid.ensureValidPassword(mIds);
+        return new Pattern(mIds);
+    }
+
+    /**
+     * hash of a new password, the hash is cached after the first call
+     */
+    @Benchmark
+    public int buildAndHash() {
+        return new Pattern(mIds).hashCode();
+    }
+
+    @Benchmark
+    public boolean equals() {
+        return mPattern.equals(mSamePattern);
+    }
+
+    @Benchmark
+    public String buildAndGetString() {
+        return new Pattern(mIds).getString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.reginald.patternlockview.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reginald.patternlockview.Pattern;
+import com.reginald.patternlockview.PatternSpace;
+
+/**
+ * counting all the valid patterns of a grid from scratch, and ranking, unranking and sampling
+ * a counted pattern space.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternSpaceBenchmark {
+    private static final int MIN_LENGTH = 4;
+
+    @Param({"3", "4"})
+    public int size;
+
+    private PatternSpace mSpace;
+    private Random mRandom;
+    private Pattern mPattern;
+    private long mIndex;
+
+    @Setup
+    public void setup() {
+        mSpace = new PatternSpace(size, MIN_LENGTH);
+        mRandom = new Random(size);
+        mIndex = mSpace.count() / 3;
+        mPattern = mSpace.unrank(mIndex);
+    }
+
+    @Benchmark
+    public long count() {
+        return new PatternSpace(size, MIN_LENGTH).count();
+    }
+
+    @Benchmark
+    public long rank() {
+        return mSpace.rank(mPattern);
+    }
+
+    @Benchmark
+    public Pattern unrank() {
+        return mSpace.unrank(mIndex);
+    }
+
+    @Benchmark
+    public Pattern sample() {
+        return mSpace.sample(mRandom);
+    }
+}
@@ -0,0 +1,333 @@
+package com.reginald.patternlockview;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the touch samples, node commits and finish results of a pattern lock into a preallocated ring buffer,
+ * and exports them in a compact delta encoded binary format.
+ * <p>
+ * The ring buffer has a single writer (the UI thread) and a single reader (any thread), it never locks
+ * and recording never allocates. If the reader falls behind and the buffer is full, new records are dropped
+ * and counted by {@link #getDroppedCount()}.
+ * <p>
+ * Format: the magic {@code "PLGR"} and a version byte, then one record after another. Each record starts with
+ * a tag byte, the low 2 bits are the record type and the high 6 bits are the touch action, followed by the time
+ * delta to the previous record in millis (zigzag varint) and
+ * <ul>
+ * <li>touch: x and y deltas in 1/{@value #POSITION_SCALE} pixels (zigzag varints)</li>
+ * <li>node: node id (varint)</li>
+ * <li>finish: result code (zigzag varint)</li>
+ * </ul>
+ * 手势录制器：无锁环形缓冲区记录触摸采样、节点连接及结果，并导出为紧凑的二进制格式。
+ */
+public final class GestureRecorder {
+    public static final int TYPE_TOUCH = 0;
+    public static final int TYPE_NODE = 1;
+    public static final int TYPE_FINISH = 2;
+
+    /**
+     * touch positions are stored in 1/POSITION_SCALE pixels
+     */
+    public static final int POSITION_SCALE = 16;
+
+    /**
+     * max size of an encoded record: tag, time delta and two 32 bits varints
+     */
+    public static final int MAX_RECORD_SIZE = 1 + 10 + 5 + 5;
+
+    private static final int MAGIC = 0x504C4752; // "PLGR"
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+    private static final int CHANNEL_BUFFER_SIZE = 8192;
+
+    private final int mMask;
+    private final byte[] mTypes;
+    private final byte[] mActions;
+    private final long[] mTimes;
+    private final int[] mValues1;
+    private final int[] mValues2;
+
+    // next sequence to write, published by the writer after the record is filled
+    private final AtomicLong mWriteSequence = new AtomicLong();
+    // next sequence to read, published by the reader after the record is consumed
+    private final AtomicLong mReadSequence = new AtomicLong();
+    // writer only: last read sequence seen by the writer, so the writer rarely reads mReadSequence
+    private long mCachedReadSequence;
+    private volatile long mDroppedCount;
+
+    // reader only: encoder state
+    private boolean mHeaderWritten;
+    private long mLastTime;
+    private int mLastX;
+    private int mLastY;
+    private ByteBuffer mChannelBuffer;
+
+    /**
+     * @param capacity max count of records not drained yet, rounded up to a power of two
+     */
+    public GestureRecorder(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mTypes = new byte[size];
+        mActions = new byte[size];
+        mTimes = new long[size];
+        mValues1 = new int[size];
+        mValues2 = new int[size];
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * @return count of records dropped because the buffer was full
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return count of records recorded and not drained yet
+     */
+    public int getPendingCount() {
+        return (int) (mWriteSequence.get() - mReadSequence.get());
+    }
+
+    /**
+     * record a touch sample, writer thread only.
+     *
+     * @param action masked touch action, e.g. MotionEvent.ACTION_MOVE, only the low 6 bits are kept
+     */
+    public void recordTouch(long time, int action, float x, float y) {
+        record(TYPE_TOUCH, action & 0x3F, time, Math.round(x * POSITION_SCALE), Math.round(y * POSITION_SCALE));
+    }
+
+    /**
+     * record a node committed to the pattern, writer thread only.
+     */
+    public void recordNode(long time, int nodeId) {
+        record(TYPE_NODE, 0, time, nodeId, 0);
+    }
+
+    /**
+     * record the result of a finished pattern, writer thread only.
+     */
+    public void recordFinish(long time, int result) {
+        record(TYPE_FINISH, 0, time, result, 0);
+    }
+
+    private void record(int type, int action, long time, int value1, int value2) {
+        long sequence = mWriteSequence.get();
+        if (sequence - mCachedReadSequence > mMask) {
+            mCachedReadSequence = mReadSequence.get();
+            if (sequence - mCachedReadSequence > mMask) {
+                mDroppedCount++;
+                return;
+            }
+        }
+        int index = (int) sequence & mMask;
+        mTypes[index] = (byte) type;
+        mActions[index] = (byte) action;
+        mTimes[index] = time;
+        mValues1[index] = value1;
+        mValues2[index] = value2;
+        mWriteSequence.lazySet(sequence + 1);
+    }
+
+    /**
+     * start a new stream, the next drain writes the header again and restarts the delta encoding.
+     * reader thread only.
+     */
+    public void resetStream() {
+        mHeaderWritten = false;
+    }
+
+    /**
+     * encode the recorded records into the buffer until it's full or all records are drained, reader thread only.
+     *
+     * @return count of the records drained
+     */
+    public int drainTo(ByteBuffer out) {
+        if (!mHeaderWritten) {
+            if (out.remaining() < HEADER_SIZE) {
+                return 0;
+            }
+            out.putInt(MAGIC);
+            out.put(VERSION);
+            mHeaderWritten = true;
+            mLastTime = 0;
+            mLastX = 0;
+            mLastY = 0;
+        }
+
+        long sequence = mReadSequence.get();
+        long end = mWriteSequence.get();
+        int count = 0;
+        while (sequence < end && out.remaining() >= MAX_RECORD_SIZE) {
+            int index = (int) sequence & mMask;
+            int type = mTypes[index];
+            long time = mTimes[index];
+            out.put((byte) (type | (mActions[index] << 2)));
+            putVarLong(out, zigzag(time - mLastTime));
+            mLastTime = time;
+            if (type == TYPE_TOUCH) {
+                int x = mValues1[index];
+                int y = mValues2[index];
+                putVarInt(out, zigzag(x - mLastX));
+                putVarInt(out, zigzag(y - mLastY));
+                mLastX = x;
+                mLastY = y;
+            } else if (type == TYPE_NODE) {
+                putVarInt(out, mValues1[index]);
+            } else {
+                putVarInt(out, zigzag(mValues1[index]));
+            }
+            sequence++;
+            count++;
+        }
+        mReadSequence.lazySet(sequence);
+        return count;
+    }
+
+    /**
+     * encode all the recorded records and write them to the channel, e.g. a FileChannel, reader thread only.
+     *
+     * @return count of the records drained
+     */
+    public int drainTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = mChannelBuffer;
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+            mChannelBuffer = buffer;
+        }
+        int total = 0;
+        while (true) {
+            buffer.clear();
+            int count = drainTo(buffer);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            total += count;
+            if (count == 0 || mReadSequence.get() == mWriteSequence.get()) {
+                return total;
+            }
+        }
+    }
+
+    /**
+     * decode a stream exported by {@link #drainTo(ByteBuffer)}.
+     *
+     * @throws IllegalArgumentException if the stream is not a gesture recorder stream or it's truncated
+     */
+    public static void decode(ByteBuffer in, Visitor visitor) {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("not a gesture recorder stream!");
+            }
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unsupported version: " + version);
+            }
+
+            long time = 0;
+            int x = 0;
+            int y = 0;
+            while (in.hasRemaining()) {
+                int tag = in.get() & 0xFF;
+                int type = tag & 0x3;
+                time += unzigzag(getVarLong(in));
+                if (type == TYPE_TOUCH) {
+                    x += unzigzag(getVarInt(in));
+                    y += unzigzag(getVarInt(in));
+                    visitor.onTouch(time, tag >>> 2, (float) x / POSITION_SCALE, (float) y / POSITION_SCALE);
+                } else if (type == TYPE_NODE) {
+                    visitor.onNode(time, getVarInt(in));
+                } else if (type == TYPE_FINISH) {
+                    visitor.onFinish(time, unzigzag(getVarInt(in)));
+                } else {
+                    throw new IllegalArgumentException("invalid record type: " + type);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("stream is truncated!", e);
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("invalid varint!");
+    }
+
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("invalid varint!");
+    }
+
+    /**
+     * receives the decoded records in order.
+     */
+    public interface Visitor {
+        void onTouch(long time, int action, float x, float y);
+
+        void onNode(long time, int nodeId);
+
+        void onFinish(long time, int result);
+    }
+}
@@ -0,0 +1,130 @@
+package com.reginald.patternlockview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pattern, an ordered sequence of node ids.
+ * The string form and the list form are only built when they are requested.
+ * 图案，按顺序排列的节点id。
+ */
+public class Pattern {
+    private final int[] mIds;
+    private int mHash;
+    private List<Integer> mList;
+    private String mString;
+
+    public Pattern(List<Integer> idList) {
+        mIds = new int[idList.size()];
+        for (int i = 0; i < mIds.length; i++) {
+            Integer id = idList.get(i);
+            if (id == null) {
+                throw new IllegalStateException("id CAN NOT be null!");
+            }
+            mIds[i] = id;
+        }
+    }
+
+    public Pattern(int[] ids) {
+        this(ids, true);
+    }
+
+    /**
+     * @param ids  node ids
+     * @param copy if false, ids is used directly and must not be modified afterwards
+     */
+    protected Pattern(int[] ids, boolean copy) {
+        mIds = copy ? ids.clone() : ids;
+    }
+
+    /**
+     * @return count of the nodes
+     */
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * @param index index in the pattern
+     * @return node id
+     */
+    public int get(int index) {
+        return mIds[index];
+    }
+
+    /**
+     * @return a copy of the node ids
+     */
+    public int[] toArray() {
+        return mIds.clone();
+    }
+
+    /**
+     * @return an unmodifiable list of the node ids
+     */
+    public List<Integer> getList() {
+        if (mList == null) {
+            List<Integer> list = new ArrayList<>(mIds.length);
+            for (int id : mIds) {
+                list.add(id);
+            }
+            mList = Collections.unmodifiableList(list);
+        }
+        return mList;
+    }
+
+    /**
+     * @return password string, e.g. [0-1-2]
+     */
+    public String getString() {
+        if (mString == null) {
+            mString = buildPasswordString(getList());
+        }
+        return mString;
+    }
+
+    protected String buildPasswordString(List<Integer> nodeIdList) {
+        StringBuilder passwordBuilder = new StringBuilder("[");
+        for (int i = 0; i < nodeIdList.size(); i++) {
+            int id = nodeIdList.get(i);
+            if (i != 0) {
+                passwordBuilder.append("-");
+            }
+            passwordBuilder.append(id);
+
+        }
+        passwordBuilder.append("]");
+        return passwordBuilder.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj instanceof Pattern) {
+            Pattern another = (Pattern) obj;
+            return Arrays.equals(mIds, another.mIds);
+        }
+
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = mHash;
+        if (hash == 0) {
+            hash = Arrays.hashCode(mIds);
+            mHash = hash;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "Pattern{ " + getString() + " }";
+    }
+}
@@ -0,0 +1,638 @@
+package com.reginald.patternlockview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Stores salted and iterated hashes (PBKDF2-HMAC-SHA256) of the passwords of many users in a memory-mapped file.
+ * <p>
+ * Records are sorted by user id and looked up by binary search directly in the mapped file, so the file is never
+ * loaded onto the heap. Each record keeps its own iteration count, so the work factor can be changed at any time;
+ * old records are upgraded when their password is verified successfully.
+ * <p>
+ * The records are kept in two copies. A change is written into the inactive copy and forced to the storage
+ * device, then a single 8 bytes header write switches to it, so a crash leaves either all the old records
+ * or all the new ones. Only the records which differ between the two copies are written, e.g. a record
+ * appended or replaced writes one record, and a record inserted shifts the records after it.
+ * <p>
+ * The store only depends on the JDK, it can be used on a server or tested on a plain JVM.
+ * 将多个用户的图案密码以加盐迭代哈希的形式保存在内存映射文件中。
+ *
+ * <pre>
+ * file layout:
+ * header:  int magic, int version, long state (capacity in the high 32 bits, then record count, active copy
+ *          in the lowest bit)
+ * copy 0:  capacity records
+ * copy 1:  capacity records
+ * record:  long user id, int iterations, int reserved, byte[16] salt, byte[32] hash
+ * </pre>
+ */
+public class PatternCredentialStore implements Closeable {
+    /**
+     * default iteration count of PBKDF2
+     */
+    public static final int DEFAULT_ITERATIONS = 10000;
+
+    private static final int MAGIC = 0x504C4353; // "PLCS"
+    private static final int VERSION = 3;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int OFFSET_STATE = 8;
+
+    private static final int SALT_SIZE = 16;
+    private static final int HASH_SIZE = 32;
+    private static final int RECORD_SIZE = 8 + 4 + 4 + SALT_SIZE + HASH_SIZE;
+    private static final int RECORD_OFFSET_ITERATIONS = 8;
+    private static final int RECORD_OFFSET_SALT = 16;
+    private static final int RECORD_OFFSET_HASH = RECORD_OFFSET_SALT + SALT_SIZE;
+    // both copies must fit in one mapping
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / (RECORD_SIZE * 2);
+
+    // unknown users are hashed against it, so they take as long as the enrolled ones
+    private static final byte[] DUMMY_SALT = new byte[SALT_SIZE];
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mCapacity;
+    private int mCount;
+    // which copy of the records is active, 0 or 1
+    private int mActive;
+    // the inactive copy may differ from the active one only in [mDirtyStart, mDirtyEnd)
+    private int mDirtyStart;
+    private int mDirtyEnd;
+
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+    private final SecureRandom mRandom = new SecureRandom();
+    private volatile int mIterations = DEFAULT_ITERATIONS;
+    private ExecutorService mExecutor;
+
+    private PatternCredentialStore(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+        try {
+            if (mChannel.size() == 0) {
+                mCapacity = INITIAL_CAPACITY;
+                map(mCapacity);
+                mBuffer.putInt(0, MAGIC);
+                mBuffer.putInt(4, VERSION);
+                mBuffer.putLong(OFFSET_STATE, state(mCapacity, 0, 0));
+                mBuffer.force();
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                if (mChannel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC
+                        || header.getInt(4) != VERSION) {
+                    throw new IOException("invalid credential store header: " + file);
+                }
+                long state = header.getLong(OFFSET_STATE);
+                long capacity = state >>> 32;
+                int count = (int) state >>> 1;
+                if (capacity <= 0 || capacity > MAX_CAPACITY || count > capacity
+                        || mChannel.size() < fileSize((int) capacity)) {
+                    throw new IOException(String.format("invalid credential store state: capacity = %d, "
+                            + "count = %d, size = %d", capacity, count, mChannel.size()));
+                }
+                mCapacity = (int) capacity;
+                mCount = count;
+                mActive = (int) (state & 1);
+                map(mCapacity);
+            }
+            // the inactive copy is unknown
+            mDirtyStart = 0;
+            mDirtyEnd = mCapacity;
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * open a credential store, the file is created if it doesn't exist.
+     *
+     * @param file store file
+     * @return credential store
+     * @throws IOException if the file can not be opened or is not a valid store
+     */
+    public static PatternCredentialStore open(File file) throws IOException {
+        return new PatternCredentialStore(file);
+    }
+
+    /**
+     * set the iteration count used for new records.
+     *
+     * @param iterations iteration count of PBKDF2
+     * @see #calibrate(long)
+     */
+    public void setIterations(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("iterations must be larger than zero!");
+        }
+        mIterations = iterations;
+    }
+
+    public int getIterations() {
+        return mIterations;
+    }
+
+    /**
+     * measure the hashing speed of the current device, and set an iteration count
+     * so that one verification takes about the given time.
+     *
+     * @param targetMillis target time of one verification in milliseconds
+     * @return the iteration count set
+     */
+    public int calibrate(long targetMillis) {
+        int iterations = calibrateIterations(targetMillis);
+        setIterations(iterations);
+        return iterations;
+    }
+
+    /**
+     * measure the hashing speed of the current device, and compute an iteration count
+     * so that one verification takes about the given time.
+     *
+     * @param targetMillis target time of one verification in milliseconds
+     * @return iteration count
+     */
+    public static int calibrateIterations(long targetMillis) {
+        if (targetMillis <= 0) {
+            throw new IllegalArgumentException("targetMillis must be larger than zero!");
+        }
+        byte[] password = {0, 1, 2, 3};
+        byte[] salt = new byte[SALT_SIZE];
+        // warm up, then double the probe until it is long enough to be measured reliably
+        deriveKey(password, salt, 1000);
+        int probe = 1000;
+        long elapsedNanos;
+        while (true) {
+            long start = System.nanoTime();
+            deriveKey(password, salt, probe);
+            elapsedNanos = System.nanoTime() - start;
+            if (elapsedNanos >= 20000000L || probe >= (1 << 24)) {
+                break;
+            }
+            probe *= 2;
+        }
+        long iterations = probe * targetMillis * 1000000L / Math.max(elapsedNanos, 1L);
+        return (int) Math.max(1L, Math.min(iterations, Integer.MAX_VALUE));
+    }
+
+    /**
+     * @return count of the users enrolled
+     */
+    public int size() {
+        mLock.readLock().lock();
+        try {
+            return mCount;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(long userId) {
+        mLock.readLock().lock();
+        try {
+            return indexOf(userId) >= 0;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * save the password of the user, the old one is replaced.
+     *
+     * @param userId   user id
+     * @param password password
+     * @throws IOException if the file can not be extended, or the store is full
+     */
+    public void enroll(long userId, Pattern password) throws IOException {
+        int iterations = mIterations;
+        byte[] salt = new byte[SALT_SIZE];
+        synchronized (mRandom) {
+            mRandom.nextBytes(salt);
+        }
+        byte[] hash = deriveKey(encode(password), salt, iterations);
+
+        mLock.writeLock().lock();
+        try {
+            int index = indexOf(userId);
+            boolean replace = index >= 0;
+            if (!replace) {
+                index = -index - 1;
+                if (mCount == mCapacity) {
+                    grow();
+                }
+            }
+            commit(index, replace, userId, iterations, salt, hash);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * remove the password of the user.
+     *
+     * @param userId user id
+     * @return true if the user was enrolled
+     */
+    public boolean remove(long userId) {
+        mLock.writeLock().lock();
+        try {
+            int index = indexOf(userId);
+            if (index < 0) {
+                return false;
+            }
+            commit(index, true, 0, 0, null, null);
+            return true;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * verify the password of the user. hashes are compared in constant time.
+     *
+     * @param userId  user id
+     * @param attempt password to verify
+     * @return true if the user is enrolled and the password matches
+     */
+    public boolean verify(long userId, Pattern attempt) {
+        return verify(userId, encode(attempt));
+    }
+
+    /**
+     * verify one password against the passwords of many users in parallel.
+     * all the candidates are always hashed, unknown users against a dummy salt at the current iteration count,
+     * so the time taken does not reveal which one matches or which ones are enrolled
+     * (as long as all the records use the current iteration count).
+     *
+     * @param attempt password to verify
+     * @param userIds candidate user ids
+     * @return index of the first matched user in userIds, or -1 if none matches
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int verifyAny(final Pattern attempt, long[] userIds) throws InterruptedException {
+        final byte[] encoded = encode(attempt);
+        ExecutorService executor = getExecutor();
+        List<Future<Boolean>> results = new ArrayList<>(userIds.length);
+        for (final long userId : userIds) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return verify(userId, encoded);
+                }
+            }));
+        }
+
+        int matched = -1;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                if (results.get(i).get() && matched < 0) {
+                    matched = i;
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("verification failed", e.getCause());
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * write all changes to the storage device.
+     */
+    public void flush() {
+        mLock.writeLock().lock();
+        try {
+            mBuffer.force();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (mExecutor != null) {
+                mExecutor.shutdown();
+                mExecutor = null;
+            }
+        }
+        mLock.writeLock().lock();
+        try {
+            mBuffer.force();
+            mChannel.close();
+            mFile.close();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    private boolean verify(long userId, byte[] encoded) {
+        int iterations;
+        byte[] salt = new byte[SALT_SIZE];
+        byte[] expected = new byte[HASH_SIZE];
+
+        mLock.readLock().lock();
+        try {
+            int index = indexOf(userId);
+            if (index < 0) {
+                iterations = 0;
+            } else {
+                iterations = readRecord(index, salt, expected);
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+
+        if (iterations == 0) {
+            deriveKey(encoded, DUMMY_SALT, mIterations);
+            return false;
+        }
+
+        boolean matched = MessageDigest.isEqual(expected, deriveKey(encoded, salt, iterations));
+        if (matched && iterations != mIterations) {
+            upgrade(userId, encoded, salt, expected);
+        }
+        return matched;
+    }
+
+    /**
+     * rehash the record of the user at the current work factor, unless it has been changed since it was verified.
+     */
+    private void upgrade(long userId, byte[] encoded, byte[] oldSalt, byte[] oldHash) {
+        int iterations = mIterations;
+        byte[] salt = new byte[SALT_SIZE];
+        synchronized (mRandom) {
+            mRandom.nextBytes(salt);
+        }
+        byte[] hash = deriveKey(encoded, salt, iterations);
+
+        byte[] currentSalt = new byte[SALT_SIZE];
+        byte[] currentHash = new byte[HASH_SIZE];
+        mLock.writeLock().lock();
+        try {
+            int index = indexOf(userId);
+            if (index < 0) {
+                return;
+            }
+            readRecord(index, currentSalt, currentHash);
+            if (!MessageDigest.isEqual(oldSalt, currentSalt) || !MessageDigest.isEqual(oldHash, currentHash)) {
+                // the password has been changed or upgraded by another thread
+                return;
+            }
+            commit(index, true, userId, iterations, salt, hash);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return iteration count of the record of the user, or 0 if the user is not enrolled
+     */
+    int getRecordIterations(long userId) {
+        mLock.readLock().lock();
+        try {
+            int index = indexOf(userId);
+            return index >= 0 ? mBuffer.getInt(recordOffset(mCapacity, mActive, index) + RECORD_OFFSET_ITERATIONS)
+                    : 0;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "PatternCredentialStore");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return mExecutor;
+    }
+
+    /**
+     * binary search the record of the user.
+     *
+     * @return index of the record, or (-(insertion point) - 1) if not found
+     */
+    private int indexOf(long userId) {
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = mBuffer.getLong(recordOffset(mCapacity, mActive, mid));
+            if (midId < userId) {
+                low = mid + 1;
+            } else if (midId > userId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * map the file with both copies of the records, the file is extended if needed.
+     */
+    private void map(int capacity) throws IOException {
+        long size = fileSize(capacity);
+        if (mChannel.size() < size) {
+            mFile.setLength(size);
+        }
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static long fileSize(int capacity) {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE * 2;
+    }
+
+    private static long state(int capacity, int count, int active) {
+        return ((long) capacity << 32) | (count << 1) | active;
+    }
+
+    /**
+     * @return offset of a record, fits in an int since the capacity is at most MAX_CAPACITY
+     */
+    private static int recordOffset(int capacity, int copy, int index) {
+        return (int) (HEADER_SIZE + ((long) copy * capacity + index) * RECORD_SIZE);
+    }
+
+    /**
+     * double the capacity. copy 1 of the larger file is after the end of the current file, the records are copied
+     * there and then the header switches to it, so a crash leaves the current records.
+     */
+    private void grow() throws IOException {
+        if (mCapacity == MAX_CAPACITY) {
+            throw new IOException("credential store is full: " + mCapacity + " records");
+        }
+        int capacity = (int) Math.min((long) mCapacity * 2, MAX_CAPACITY);
+        map(capacity);
+        for (int i = 0; i < mCount; i++) {
+            copyRecord(i, capacity, 1, i);
+        }
+
+        mBuffer.force();
+        mBuffer.putLong(OFFSET_STATE, state(capacity, mCount, 1));
+        mBuffer.force();
+        mCapacity = capacity;
+        mActive = 1;
+        // copy 0 holds the old copies of both layouts
+        mDirtyStart = 0;
+        mDirtyEnd = capacity;
+    }
+
+    /**
+     * write the records with one change into the inactive copy, then switch to it.
+     * only the records changed and the ones which differ between the copies are written.
+     * the capacity must be large enough for an inserted record.
+     *
+     * @param index   index of the changed record
+     * @param replace whether the record at index is dropped
+     * @param hash    hash of the record written at index, or null to remove the record at index
+     */
+    private void commit(int index, boolean replace, long userId, int iterations, byte[] salt, byte[] hash) {
+        int target = 1 - mActive;
+        int count = hash == null ? mCount - 1 : replace ? mCount : mCount + 1;
+        // end of the records moved or changed by this commit
+        int changeEnd = hash != null && replace ? index + 1 : count;
+        int start = Math.min(index, mDirtyStart);
+        int end = Math.min(Math.max(changeEnd, mDirtyEnd), count);
+        for (int i = start; i < end; i++) {
+            if (i == index && hash != null) {
+                writeRecord(target, i, userId, iterations, salt, hash);
+            } else if (i < index || replace && hash != null) {
+                copyRecord(i, mCapacity, target, i);
+            } else if (hash == null) {
+                copyRecord(i + 1, mCapacity, target, i);
+            } else {
+                copyRecord(i - 1, mCapacity, target, i);
+            }
+        }
+
+        // the records must be on the storage device before the header points to them
+        mBuffer.force();
+        mBuffer.putLong(OFFSET_STATE, state(mCapacity, count, target));
+        mBuffer.force();
+        mDirtyStart = index;
+        mDirtyEnd = changeEnd;
+        mActive = target;
+        mCount = count;
+    }
+
+    /**
+     * @return iteration count of the record
+     */
+    private int readRecord(int index, byte[] salt, byte[] hash) {
+        int offset = recordOffset(mCapacity, mActive, index);
+        for (int i = 0; i < SALT_SIZE; i++) {
+            salt[i] = mBuffer.get(offset + RECORD_OFFSET_SALT + i);
+        }
+        for (int i = 0; i < HASH_SIZE; i++) {
+            hash[i] = mBuffer.get(offset + RECORD_OFFSET_HASH + i);
+        }
+        return mBuffer.getInt(offset + RECORD_OFFSET_ITERATIONS);
+    }
+
+    /**
+     * copy a record of the active copy to the given copy of a layout with the given capacity.
+     */
+    private void copyRecord(int from, int capacity, int copy, int to) {
+        int fromOffset = recordOffset(mCapacity, mActive, from);
+        int toOffset = recordOffset(capacity, copy, to);
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            mBuffer.putLong(toOffset + i, mBuffer.getLong(fromOffset + i));
+        }
+    }
+
+    private void writeRecord(int copy, int index, long userId, int iterations, byte[] salt, byte[] hash) {
+        int offset = recordOffset(mCapacity, copy, index);
+        mBuffer.putLong(offset, userId);
+        mBuffer.putInt(offset + RECORD_OFFSET_ITERATIONS, iterations);
+        mBuffer.putInt(offset + RECORD_OFFSET_ITERATIONS + 4, 0);
+        for (int i = 0; i < SALT_SIZE; i++) {
+            mBuffer.put(offset + RECORD_OFFSET_SALT + i, salt[i]);
+        }
+        for (int i = 0; i < HASH_SIZE; i++) {
+            mBuffer.put(offset + RECORD_OFFSET_HASH + i, hash[i]);
+        }
+    }
+
+    /**
+     * encode the password as its node count followed by the node ids, 2 bytes each.
+     */
+    static byte[] encode(Pattern password) {
+        if (password == null) {
+            throw new IllegalArgumentException("password is null!");
+        }
+        int size = password.size();
+        byte[] encoded = new byte[(size + 1) * 2];
+        encoded[0] = (byte) (size >>> 8);
+        encoded[1] = (byte) size;
+        for (int i = 0; i < size; i++) {
+            int id = password.get(i);
+            encoded[(i + 1) * 2] = (byte) (id >>> 8);
+            encoded[(i + 1) * 2 + 1] = (byte) id;
+        }
+        return encoded;
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 with one output block.
+     */
+    static byte[] deriveKey(byte[] password, byte[] salt, int iterations) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(password, HMAC_ALGORITHM));
+            byte[] block = new byte[HASH_SIZE];
+            byte[] result = new byte[HASH_SIZE];
+
+            // U1 = PRF(password, salt || INT(1))
+            mac.update(salt);
+            mac.update(new byte[]{0, 0, 0, 1});
+            mac.doFinal(block, 0);
+            System.arraycopy(block, 0, result, 0, HASH_SIZE);
+
+            // Ui = PRF(password, Ui-1), result = U1 ^ U2 ^ ... ^ Uc
+            for (int i = 1; i < iterations; i++) {
+                mac.update(block);
+                mac.doFinal(block, 0);
+                for (int j = 0; j < HASH_SIZE; j++) {
+                    result[j] ^= block[j];
+                }
+            }
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available", e);
+        }
+    }
+}
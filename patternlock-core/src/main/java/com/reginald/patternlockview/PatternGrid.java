@@ -0,0 +1,185 @@
+package com.reginald.patternlockview;
+
+import java.util.List;
+
+/**
+ * The rows * columns grid of a pattern lock: node ids, password validation and the nodes in the path of
+ * every two nodes. Node ids are numbered row by row from 0 to rows * columns - 1.
+ * 图案锁的节点网格。
+ */
+public class PatternGrid {
+    /**
+     * grids with more nodes look up the mid nodes by gcd stepping instead of a table of every node pair
+     */
+    public static final int LINK_TABLE_MAX_NODES = 256;
+
+    private final int mRowCount;
+    private final int mColumnCount;
+    private final int mTotalSize;
+    // mid nodes in the path of every two nodes, see setupLinkTable(), null for large grids
+    private int[] mLinkOffsets;
+    private short[] mLinkNodes;
+
+    public PatternGrid(int size) {
+        this(size, size);
+    }
+
+    public PatternGrid(int rowCount, int columnCount) {
+        if (rowCount <= 0 || columnCount <= 0) {
+            throw new IllegalArgumentException(String.format("invalid grid size: %d * %d, rows and columns "
+                    + "must be larger than zero!", rowCount, columnCount));
+        }
+        mRowCount = rowCount;
+        mColumnCount = columnCount;
+        mTotalSize = rowCount * columnCount;
+        if (mTotalSize <= LINK_TABLE_MAX_NODES) {
+            setupLinkTable();
+        }
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public int getColumnCount() {
+        return mColumnCount;
+    }
+
+    /**
+     * @return count of all nodes
+     */
+    public int getTotalSize() {
+        return mTotalSize;
+    }
+
+    public int getRow(int nodeId) {
+        return nodeId / mColumnCount;
+    }
+
+    public int getColumn(int nodeId) {
+        return nodeId % mColumnCount;
+    }
+
+    public int getNodeId(int row, int column) {
+        return row * mColumnCount + column;
+    }
+
+    /**
+     * @return max count of the mid nodes between two nodes, the required length of the buffer of
+     * {@link #getMidNodes(int, int, int[])}
+     */
+    public int getMaxMidNodeCount() {
+        return Math.max(Math.max(mRowCount, mColumnCount) - 2, 0);
+    }
+
+    /**
+     * find the nodes in the path from first to second.
+     *
+     * @param outNodes receives the mid nodes in path order, its length must be at least {@link #getMaxMidNodeCount()}
+     * @return count of the mid nodes
+     */
+    public int getMidNodes(int first, int second, int[] outNodes) {
+        if (mLinkOffsets != null) {
+            int pair = first * mTotalSize + second;
+            int start = mLinkOffsets[pair];
+            int count = mLinkOffsets[pair + 1] - start;
+            for (int i = 0; i < count; i++) {
+                outNodes[i] = mLinkNodes[start + i];
+            }
+            return count;
+        }
+
+        int firstRow = first / mColumnCount;
+        int firstColumn = first % mColumnCount;
+        int xDiff = second % mColumnCount - firstColumn;
+        int yDiff = second / mColumnCount - firstRow;
+        int steps = gcd(Math.abs(xDiff), Math.abs(yDiff));
+        // a node is in the path only if both of its offsets are integer multiples of the unit step
+        for (int k = 1; k < steps; k++) {
+            outNodes[k - 1] = (firstRow + k * (yDiff / steps)) * mColumnCount + firstColumn + k * (xDiff / steps);
+        }
+        return steps > 1 ? steps - 1 : 0;
+    }
+
+    public boolean isValidNodeId(int id) {
+        return id >= 0 && id < mTotalSize;
+    }
+
+    public void ensureValidPassword(List<Integer> password) {
+        if (password == null) {
+            throw new IllegalArgumentException("password is null!");
+        }
+
+        for (Integer id : password) {
+            if (id == null) {
+                throw new IllegalArgumentException("password has null value!");
+            }
+            ensureValidNodeId(id);
+        }
+    }
+
+    public void ensureValidPassword(int[] password) {
+        if (password == null) {
+            throw new IllegalArgumentException("password is null!");
+        }
+
+        for (int id : password) {
+            ensureValidNodeId(id);
+        }
+    }
+
+    public void ensureValidNodeId(int id) {
+        if (!isValidNodeId(id)) {
+            throw new IllegalArgumentException(String.format("password value is invalid: %d, valid range is "
+                    + "[%d, %d]", id, 0, mTotalSize - 1));
+        }
+    }
+
+    /**
+     * build the table of the nodes in the path of every two nodes.
+     * the mid nodes from node i to node j are stored in mLinkNodes from mLinkOffsets[i * n + j]
+     * to mLinkOffsets[i * n + j + 1] in path order, where n is the total size.
+     */
+    private void setupLinkTable() {
+        int totalSize = mTotalSize;
+        int columns = mColumnCount;
+        int pairs = totalSize * totalSize;
+        int[] offsets = new int[pairs + 1];
+        for (int first = 0; first < totalSize; first++) {
+            for (int second = 0; second < totalSize; second++) {
+                int pair = first * totalSize + second;
+                int steps = gcd(Math.abs(second % columns - first % columns),
+                        Math.abs(second / columns - first / columns));
+                offsets[pair + 1] = offsets[pair] + (steps > 1 ? steps - 1 : 0);
+            }
+        }
+
+        short[] nodes = new short[offsets[pairs]];
+        int index = 0;
+        for (int first = 0; first < totalSize; first++) {
+            for (int second = 0; second < totalSize; second++) {
+                int xDiff = second % columns - first % columns;
+                int yDiff = second / columns - first / columns;
+                int steps = gcd(Math.abs(xDiff), Math.abs(yDiff));
+                // a node is in the path only if both of its offsets are integer multiples of the unit step
+                for (int k = 1; k < steps; k++) {
+                    int row = first / columns + k * (yDiff / steps);
+                    int column = first % columns + k * (xDiff / steps);
+                    nodes[index++] = (short) (row * columns + column);
+                }
+            }
+        }
+
+        mLinkOffsets = offsets;
+        mLinkNodes = nodes;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,498 @@
+package com.reginald.patternlockview;
+
+/**
+ * Measure, layout and hit testing of the nodes of a {@link PatternGrid}, see PatternLockView for the layout rules.
+ * All positions are in pixels relative to the left-top of the lock view.
+ * Results of measure() and layout() are cached and reused until their inputs or the configuration change.
+ * 节点的测量、布局与触摸检测。
+ */
+public class PatternLayout {
+    public static final int NO_NODE = -1;
+
+    private PatternGrid mGrid;
+    private int mRowCount;
+    private int mColumnCount;
+    private int mTotalSize;
+
+    private float mNodeSize;
+    private float mPadding;
+    private float mSpacing = -1;
+    // only used in Identical-Area mode, whether to keep each square
+    private boolean mIsSquareArea = true;
+    private float mNodeAreaExpand;
+    // whether the touch area of each node is a circle instead of a square
+    private boolean mIsNodeTouchCircle;
+
+    // inputs of the last measure(), the result is reused if they are unchanged
+    private boolean mIsMeasureValid;
+    private int mWidthInput;
+    private boolean mIsWidthExactly;
+    private int mHeightInput;
+    private boolean mIsHeightExactly;
+    // size of the last layout(), node bounds are reused if it and the measured results are unchanged
+    private boolean mIsLayoutValid;
+    private int mLayoutWidth;
+    private int mLayoutHeight;
+
+    private int mMeasuredWidth;
+    private int mMeasuredHeight;
+    private float mMeasuredPadding;
+    private float mMeasuredSpacing;
+    private int mMeasuredNodeSize;
+
+    // node bounds computed in layout(), [left, top, right, bottom] of node n start at n * 4
+    private int[] mNodeBounds;
+    // grid geometry computed in layout(): left-top of node 0 and the distance between adjacent nodes
+    private float mGridOriginX;
+    private float mGridOriginY;
+    private float mCellStrideX;
+    private float mCellStrideY;
+    // reusable buffer for sorting the nodes hit by one segment
+    private float[] mPathHitTimes;
+
+    public void setGrid(PatternGrid grid) {
+        mGrid = grid;
+        mRowCount = grid.getRowCount();
+        mColumnCount = grid.getColumnCount();
+        mTotalSize = grid.getTotalSize();
+        mNodeBounds = new int[mTotalSize * 4];
+        mPathHitTimes = new float[mTotalSize];
+        mIsMeasureValid = false;
+        mIsLayoutValid = false;
+    }
+
+    public PatternGrid getGrid() {
+        return mGrid;
+    }
+
+    public float getNodeSize() {
+        return mNodeSize;
+    }
+
+    public void setNodeSize(float nodeSize) {
+        if (mNodeSize != nodeSize) {
+            mNodeSize = nodeSize;
+            mIsMeasureValid = false;
+        }
+    }
+
+    public void setPadding(float padding) {
+        if (mPadding != padding) {
+            mPadding = padding;
+            mIsMeasureValid = false;
+        }
+    }
+
+    /**
+     * @param spacing spacing between nodes, or -1 to use Identical-Area mode
+     */
+    public void setSpacing(float spacing) {
+        if (mSpacing != spacing) {
+            mSpacing = spacing;
+            mIsMeasureValid = false;
+        }
+    }
+
+    public void setSquareArea(boolean isSquareArea) {
+        if (mIsSquareArea != isSquareArea) {
+            mIsSquareArea = isSquareArea;
+            mIsLayoutValid = false;
+        }
+    }
+
+    public void setNodeAreaExpand(float expand) {
+        mNodeAreaExpand = expand;
+    }
+
+    public void setNodeTouchCircle(boolean isCircle) {
+        mIsNodeTouchCircle = isCircle;
+    }
+
+    /**
+     * compute the size of the lock view and its nodes.
+     *
+     * @param width          available width
+     * @param isWidthExactly whether the width must be used exactly
+     * @param height         available height
+     * @param isHeightExactly whether the height must be used exactly
+     * @return false if the cached result is reused
+     */
+    public boolean measure(int width, boolean isWidthExactly, int height, boolean isHeightExactly) {
+        if (mIsMeasureValid && width == mWidthInput && isWidthExactly == mIsWidthExactly
+                && height == mHeightInput && isHeightExactly == mIsHeightExactly) {
+            return false;
+        }
+        mWidthInput = width;
+        mIsWidthExactly = isWidthExactly;
+        mHeightInput = height;
+        mIsHeightExactly = isHeightExactly;
+        mIsMeasureValid = true;
+
+        int lastNodeSize = mMeasuredNodeSize;
+        float lastSpacing = mMeasuredSpacing;
+        boolean needRemeasure = false;
+        int xGaps = mColumnCount - 1;
+        int yGaps = mRowCount - 1;
+        float nodesize = mNodeSize;
+        mMeasuredPadding = mPadding;
+        mMeasuredSpacing = mSpacing;
+        float maxNodeWidth, maxNodeHeight, maxNodeSize;
+
+        // Spacing&Padding mode:
+        if (mSpacing >= 0) {
+            maxNodeWidth = ((width - mPadding * 2 - mSpacing * xGaps) / mColumnCount);
+            maxNodeHeight = ((height - mPadding * 2 - mSpacing * yGaps) / mRowCount);
+            maxNodeSize = maxNodeWidth < maxNodeHeight ? maxNodeWidth : maxNodeHeight;
+
+            // if maximum available nodesize if smaller than desired nodesize with paddings & spacing unchanged
+            if (nodesize > maxNodeSize) {
+                int xRemains = (int) (width - mColumnCount * nodesize);
+                int yRemains = (int) (height - mRowCount * nodesize);
+                int xPaddingsAndSpacings = (int) (mPadding * 2 + mSpacing * xGaps);
+                int yPaddingsAndSpacings = (int) (mPadding * 2 + mSpacing * yGaps);
+
+                // keep nodesize & shrink paddings and spacing if there are enough space
+                if (xRemains > 0 && yRemains > 0 && xPaddingsAndSpacings > 0 && yPaddingsAndSpacings > 0) {
+                    float xShrinkRatio = (float) xRemains / xPaddingsAndSpacings;
+                    float yShrinkRatio = (float) yRemains / yPaddingsAndSpacings;
+                    float shrinkRatio = xShrinkRatio < yShrinkRatio ? xShrinkRatio : yShrinkRatio;
+                    mMeasuredPadding *= shrinkRatio;
+                    mMeasuredSpacing *= shrinkRatio;
+                } else { // otherwise shrink nodesize & keep paddings and spacing
+                    nodesize = maxNodeSize;
+                }
+            } else {
+                if (!isWidthExactly) {
+                    width = (int) (mPadding * 2 + mSpacing * xGaps + mColumnCount * nodesize);
+                }
+
+                if (!isHeightExactly) {
+                    height = (int) (mPadding * 2 + mSpacing * yGaps + mRowCount * nodesize);
+                }
+            }
+
+            // if result nodesize is smaller than zero, remeasure without using spacings.
+            if (nodesize <= 0) {
+                needRemeasure = true;
+            }
+        }
+
+        // Identical-Area mode:
+        // if no spacing is provided, divide the whole area into rows * columns identical area for each node
+        if (needRemeasure || mSpacing < 0) {
+            mMeasuredSpacing = -1;
+            nodesize = mNodeSize;
+            maxNodeWidth = width / mColumnCount;
+            maxNodeHeight = height / mRowCount;
+            maxNodeSize = maxNodeWidth < maxNodeHeight ? maxNodeWidth : maxNodeHeight;
+
+            // if maximum available nodesize if smaller than desired nodesize
+            if (nodesize > maxNodeSize) {
+                nodesize = maxNodeSize;
+            }
+        }
+
+        // keep the aspect ratio of the grid if not measured exactly
+        long widthInRows = (long) width * mRowCount;
+        long heightInColumns = (long) height * mColumnCount;
+        if (widthInRows > heightInColumns && !isWidthExactly) {
+            width = (int) (heightInColumns / mRowCount);
+        } else if (widthInRows < heightInColumns && !isHeightExactly) {
+            height = (int) (widthInRows / mColumnCount);
+        }
+
+        mMeasuredWidth = width;
+        mMeasuredHeight = height;
+        mMeasuredNodeSize = (int) nodesize;
+        if (mMeasuredNodeSize != lastNodeSize || mMeasuredSpacing != lastSpacing) {
+            mIsLayoutValid = false;
+        }
+        return true;
+    }
+
+    public int getMeasuredWidth() {
+        return mMeasuredWidth;
+    }
+
+    public int getMeasuredHeight() {
+        return mMeasuredHeight;
+    }
+
+    public int getMeasuredNodeSize() {
+        return mMeasuredNodeSize;
+    }
+
+    public float getMeasuredPadding() {
+        return mMeasuredPadding;
+    }
+
+    /**
+     * @return measured spacing, or -1 in Identical-Area mode
+     */
+    public float getMeasuredSpacing() {
+        return mMeasuredSpacing;
+    }
+
+    /**
+     * compute the bounds of all nodes with the measured node size.
+     *
+     * @param width  width of the lock view
+     * @param height height of the lock view
+     * @return true if the node bounds may have changed, false if the cached bounds are reused
+     */
+    public boolean layout(int width, int height) {
+        if (mIsLayoutValid && width == mLayoutWidth && height == mLayoutHeight) {
+            return false;
+        }
+        mLayoutWidth = width;
+        mLayoutHeight = height;
+        mIsLayoutValid = true;
+
+        float nodeSize = mMeasuredNodeSize;
+
+        // Identical-Area mode:
+        if (mMeasuredSpacing < 0) {
+            float areaWidth = width / mColumnCount;
+            float areaHeight = height / mRowCount;
+            float areaSize = areaWidth < areaHeight ? areaWidth : areaHeight;
+            float widthPadding = 0f;
+            float heightPadding = 0f;
+            // whether to keep each cell as square (width = height)
+            if (mIsSquareArea) {
+                areaWidth = areaSize;
+                areaHeight = areaSize;
+                widthPadding = (width - mColumnCount * areaSize) / 2;
+                heightPadding = (height - mRowCount * areaSize) / 2;
+            }
+            mGridOriginX = widthPadding + (areaWidth - nodeSize) / 2;
+            mGridOriginY = heightPadding + (areaHeight - nodeSize) / 2;
+            mCellStrideX = areaWidth;
+            mCellStrideY = areaHeight;
+
+            for (int n = 0; n < mTotalSize; n++) {
+                int row = n / mColumnCount;
+                int col = n % mColumnCount;
+                int l = (int) (widthPadding + col * areaWidth + (areaWidth - nodeSize) / 2);
+                int t = (int) (heightPadding + row * areaHeight + (areaHeight - nodeSize) / 2);
+                setNodeBounds(n, l, t, (int) (l + nodeSize), (int) (t + nodeSize));
+            }
+        } else { // Spacing&Padding mode:
+            float widthPadding = (width - mColumnCount * nodeSize - mMeasuredSpacing * (mColumnCount - 1)) / 2;
+            float heightPadding = (height - mRowCount * nodeSize - mMeasuredSpacing * (mRowCount - 1)) / 2;
+            mGridOriginX = widthPadding;
+            mGridOriginY = heightPadding;
+            mCellStrideX = nodeSize + mMeasuredSpacing;
+            mCellStrideY = nodeSize + mMeasuredSpacing;
+            for (int n = 0; n < mTotalSize; n++) {
+                int row = n / mColumnCount;
+                int col = n % mColumnCount;
+                int l = (int) (widthPadding + col * (nodeSize + mMeasuredSpacing));
+                int t = (int) (heightPadding + row * (nodeSize + mMeasuredSpacing));
+                setNodeBounds(n, l, t, (int) (l + nodeSize), (int) (t + nodeSize));
+            }
+        }
+        return true;
+    }
+
+    private void setNodeBounds(int nodeId, int l, int t, int r, int b) {
+        int index = nodeId * 4;
+        mNodeBounds[index] = l;
+        mNodeBounds[index + 1] = t;
+        mNodeBounds[index + 2] = r;
+        mNodeBounds[index + 3] = b;
+    }
+
+    /**
+     * @return node bounds, [left, top, right, bottom] of node n start at n * 4.
+     * the array is owned by the layout and must not be modified.
+     */
+    public int[] getNodeBounds() {
+        return mNodeBounds;
+    }
+
+    public int getNodeLeft(int nodeId) {
+        return mNodeBounds[nodeId * 4];
+    }
+
+    public int getNodeTop(int nodeId) {
+        return mNodeBounds[nodeId * 4 + 1];
+    }
+
+    public int getNodeRight(int nodeId) {
+        return mNodeBounds[nodeId * 4 + 2];
+    }
+
+    public int getNodeBottom(int nodeId) {
+        return mNodeBounds[nodeId * 4 + 3];
+    }
+
+    public int getNodeCenterX(int nodeId) {
+        int index = nodeId * 4;
+        return (mNodeBounds[index] + mNodeBounds[index + 2]) / 2;
+    }
+
+    public int getNodeCenterY(int nodeId) {
+        int index = nodeId * 4;
+        return (mNodeBounds[index + 1] + mNodeBounds[index + 3]) / 2;
+    }
+
+    /**
+     * find the node at the given position.
+     * the candidate rows and columns are computed from the grid geometry, so only the nodes whose
+     * (expanded) touch area may cover the position are checked, in the order of node id.
+     *
+     * @return node id, or {@link #NO_NODE}
+     */
+    public int getNodeAt(float x, float y) {
+        int minColumn = getMinCandidateCell(x - mGridOriginX, mCellStrideX);
+        int maxColumn = getMaxCandidateCell(x - mGridOriginX, mCellStrideX, mColumnCount);
+        int minRow = getMinCandidateCell(y - mGridOriginY, mCellStrideY);
+        int maxRow = getMaxCandidateCell(y - mGridOriginY, mCellStrideY, mRowCount);
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int n = row * mColumnCount + column;
+                if (isInNodeArea(n, x, y)) {
+                    return n;
+                }
+            }
+        }
+        return NO_NODE;
+    }
+
+    /**
+     * find the nodes whose touch area intersects the segment from (startX, startY) to (endX, endY).
+     *
+     * @param outNodes receives the nodes found sorted by the distance from the start point,
+     *                 its length must be at least the total size of the grid
+     * @return count of the nodes found
+     */
+    public int getNodesOnPath(float startX, float startY, float endX, float endY, int[] outNodes) {
+        int minColumn = getMinCandidateCell(Math.min(startX, endX) - mGridOriginX, mCellStrideX);
+        int maxColumn = getMaxCandidateCell(Math.max(startX, endX) - mGridOriginX, mCellStrideX, mColumnCount);
+        int minRow = getMinCandidateCell(Math.min(startY, endY) - mGridOriginY, mCellStrideY);
+        int maxRow = getMaxCandidateCell(Math.max(startY, endY) - mGridOriginY, mCellStrideY, mRowCount);
+
+        int hitCount = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int n = row * mColumnCount + column;
+                float t = intersectNodeArea(n, startX, startY, endX, endY);
+                if (t < 0) {
+                    continue;
+                }
+                // insertion sort by t, keep node id order for equal t
+                int i = hitCount++;
+                while (i > 0 && mPathHitTimes[i - 1] > t) {
+                    mPathHitTimes[i] = mPathHitTimes[i - 1];
+                    outNodes[i] = outNodes[i - 1];
+                    i--;
+                }
+                mPathHitTimes[i] = t;
+                outNodes[i] = n;
+            }
+        }
+        return hitCount;
+    }
+
+    /**
+     * @return the position (0 ~ 1) on the segment where it enters the touch area of the node,
+     * or -1 if the segment does not intersect the touch area
+     */
+    private float intersectNodeArea(int nodeId, float startX, float startY, float endX, float endY) {
+        int index = nodeId * 4;
+        float dx = endX - startX;
+        float dy = endY - startY;
+
+        if (mIsNodeTouchCircle) {
+            float radius = (mNodeBounds[index + 2] - mNodeBounds[index]) / 2f + mNodeAreaExpand;
+            float fx = startX - (mNodeBounds[index] + mNodeBounds[index + 2]) / 2f;
+            float fy = startY - (mNodeBounds[index + 1] + mNodeBounds[index + 3]) / 2f;
+            float c = fx * fx + fy * fy - radius * radius;
+            if (c <= 0) {
+                return 0f;
+            }
+            float a = dx * dx + dy * dy;
+            float b = 2 * (fx * dx + fy * dy);
+            float discriminant = b * b - 4 * a * c;
+            if (a == 0 || discriminant < 0) {
+                return -1f;
+            }
+            float t = (float) ((-b - Math.sqrt(discriminant)) / (2 * a));
+            return t >= 0 && t <= 1 ? t : -1f;
+        }
+
+        // Liang-Barsky clipping against the expanded node bounds
+        float tEnter = 0f;
+        float tExit = 1f;
+        for (int edge = 0; edge < 4; edge++) {
+            float p;
+            float q;
+            switch (edge) {
+                case 0:
+                    p = -dx;
+                    q = startX - (mNodeBounds[index] - mNodeAreaExpand);
+                    break;
+                case 1:
+                    p = dx;
+                    q = mNodeBounds[index + 2] + mNodeAreaExpand - startX;
+                    break;
+                case 2:
+                    p = -dy;
+                    q = startY - (mNodeBounds[index + 1] - mNodeAreaExpand);
+                    break;
+                default:
+                    p = dy;
+                    q = mNodeBounds[index + 3] + mNodeAreaExpand - startY;
+                    break;
+            }
+            if (p == 0) {
+                if (q < 0) {
+                    return -1f;
+                }
+            } else {
+                float t = q / p;
+                if (p < 0) {
+                    if (t > tEnter) {
+                        tEnter = t;
+                    }
+                } else if (t < tExit) {
+                    tExit = t;
+                }
+                if (tEnter > tExit) {
+                    return -1f;
+                }
+            }
+        }
+        return tEnter;
+    }
+
+    private int getMinCandidateCell(float offset, float stride) {
+        if (stride <= 0) {
+            return 0;
+        }
+        // node bounds are truncated to int, so a node may start up to 1px before its grid position
+        int cell = (int) Math.floor((offset - mMeasuredNodeSize - mNodeAreaExpand) / stride);
+        return cell < 0 ? 0 : cell;
+    }
+
+    private int getMaxCandidateCell(float offset, float stride, int cellCount) {
+        if (stride <= 0) {
+            return cellCount - 1;
+        }
+        int cell = (int) Math.floor((offset + mNodeAreaExpand + 1) / stride);
+        return cell > cellCount - 1 ? cellCount - 1 : cell;
+    }
+
+    private boolean isInNodeArea(int nodeId, float x, float y) {
+        int index = nodeId * 4;
+        if (mIsNodeTouchCircle) {
+            float radius = (mNodeBounds[index + 2] - mNodeBounds[index]) / 2f + mNodeAreaExpand;
+            float dx = x - (mNodeBounds[index] + mNodeBounds[index + 2]) / 2f;
+            float dy = y - (mNodeBounds[index + 1] + mNodeBounds[index + 3]) / 2f;
+            return dx * dx + dy * dy <= radius * radius;
+        }
+        return x >= mNodeBounds[index] - mNodeAreaExpand && x < mNodeBounds[index + 2] + mNodeAreaExpand
+                && y >= mNodeBounds[index + 1] - mNodeAreaExpand && y < mNodeBounds[index + 3] + mNodeAreaExpand;
+    }
+}
@@ -0,0 +1,486 @@
+package com.reginald.patternlockview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * All the valid patterns of a grid with a length in [minLength, maxLength], under the auto link rule:
+ * a move can not jump over a node which is not visited yet.
+ * <p>
+ * Patterns are counted by a dynamic programming over (visited nodes bit mask, last node) with memoization,
+ * and ordered lexicographically by node id (a pattern comes before all patterns it is a prefix of),
+ * so every pattern maps to a dense index in [0, {@link #count()}) and back.
+ * Grids with at least {@link #PARALLEL_MIN_NODES} nodes are counted in a fork join pool if it's available
+ * (android api 21 and above), otherwise sequentially.
+ * <p>
+ * Counting 3 * 3 takes milliseconds and 4 * 4 well under a second, the memo of 4 * 4 takes 8MB.
+ * The states of a 5 * 5 grid grow with the max length, keep it small (e.g. 7), full length 5 * 5 patterns
+ * can not be counted.
+ * 图案空间：统计所有合法图案，图案与序号互相转换，均匀随机采样。
+ */
+public class PatternSpace {
+    /**
+     * max node count of the grid, visited nodes are kept in an int bit mask
+     */
+    public static final int MAX_NODES = 31;
+
+    /**
+     * grids with at least this many nodes are counted in a fork join pool
+     */
+    public static final int PARALLEL_MIN_NODES = 16;
+
+    /**
+     * grids with at most this many nodes keep the memo in a dense array of (1 << n) * n entries,
+     * larger ones keep only the reached states in a hash table
+     */
+    public static final int DENSE_MEMO_MAX_NODES = 16;
+
+    // states with a pattern length below this are counted in forked tasks
+    private static final int FORK_DEPTH = 2;
+
+    private static final boolean FORK_JOIN_SUPPORTED = isForkJoinSupported();
+
+    private final PatternGrid mGrid;
+    private final int mTotalSize;
+    private final int mMinLength;
+    private final int mMaxLength;
+    // bit mask of the mid nodes from node i to node j at mLinkMasks[i * n + j]
+    private final int[] mLinkMasks;
+    private final boolean mIsParallel;
+
+    // memoized count of patterns + 1 of every state, 0 if not counted yet
+    private final AtomicLongArray mDenseMemo;
+    private final SparseMemo mSparseMemo;
+    private volatile long mCount = -1;
+
+    /**
+     * all patterns of a size * size grid with at least minLength nodes
+     */
+    public PatternSpace(int size, int minLength) {
+        this(new PatternGrid(size), minLength, size * size);
+    }
+
+    /**
+     * @param minLength min count of nodes of a pattern, at least 1
+     * @param maxLength max count of nodes of a pattern, at most the total size of the grid
+     */
+    public PatternSpace(PatternGrid grid, int minLength, int maxLength) {
+        this(grid, minLength, maxLength, grid != null && grid.getTotalSize() <= DENSE_MEMO_MAX_NODES,
+                grid != null && grid.getTotalSize() >= PARALLEL_MIN_NODES && FORK_JOIN_SUPPORTED);
+    }
+
+    /**
+     * @param denseMemo whether the memo is kept in a dense array, only for grids with at most
+     *                  {@link #DENSE_MEMO_MAX_NODES} nodes
+     * @param parallel  whether counted in a fork join pool
+     */
+    PatternSpace(PatternGrid grid, int minLength, int maxLength, boolean denseMemo, boolean parallel) {
+        if (grid == null) {
+            throw new IllegalArgumentException("grid is null!");
+        }
+        mGrid = grid;
+        mTotalSize = grid.getTotalSize();
+        if (mTotalSize > MAX_NODES) {
+            throw new IllegalArgumentException(String.format("grid is too large: %d nodes, max is %d",
+                    mTotalSize, MAX_NODES));
+        }
+        if (minLength < 1 || minLength > maxLength || maxLength > mTotalSize) {
+            throw new IllegalArgumentException(String.format("invalid length range: [%d, %d], valid range is "
+                    + "[1, %d]", minLength, maxLength, mTotalSize));
+        }
+        mMinLength = minLength;
+        mMaxLength = maxLength;
+
+        int n = mTotalSize;
+        mLinkMasks = new int[n * n];
+        int[] midNodes = new int[grid.getMaxMidNodeCount()];
+        for (int first = 0; first < n; first++) {
+            for (int second = 0; second < n; second++) {
+                int count = grid.getMidNodes(first, second, midNodes);
+                int mask = 0;
+                for (int i = 0; i < count; i++) {
+                    mask |= 1 << midNodes[i];
+                }
+                mLinkMasks[first * n + second] = mask;
+            }
+        }
+
+        mIsParallel = parallel && FORK_JOIN_SUPPORTED;
+        if (denseMemo) {
+            if (n > DENSE_MEMO_MAX_NODES) {
+                throw new IllegalArgumentException("grid is too large for a dense memo: " + n + " nodes");
+            }
+            mDenseMemo = new AtomicLongArray((1 << n) * n);
+            mSparseMemo = null;
+        } else {
+            mDenseMemo = null;
+            mSparseMemo = new SparseMemo();
+        }
+    }
+
+    public PatternGrid getGrid() {
+        return mGrid;
+    }
+
+    public int getMinLength() {
+        return mMinLength;
+    }
+
+    public int getMaxLength() {
+        return mMaxLength;
+    }
+
+    /**
+     * count all the valid patterns, the result is cached.
+     *
+     * @throws IllegalStateException if the count overflows a long, use a smaller max length
+     */
+    public long count() {
+        long count = mCount;
+        if (count < 0) {
+            if (mIsParallel) {
+                count = countInPool();
+            } else {
+                count = countFrom(0, -1, 0);
+            }
+            mCount = count;
+        }
+        return count;
+    }
+
+    private long countInPool() {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return pool.invoke(new CountTask(this, 0, -1, 0));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return whether the pattern is in this space
+     */
+    public boolean contains(Pattern pattern) {
+        int length = pattern.size();
+        if (length < mMinLength || length > mMaxLength) {
+            return false;
+        }
+        int mask = 0;
+        int last = -1;
+        for (int i = 0; i < length; i++) {
+            int next = pattern.get(i);
+            if (!mGrid.isValidNodeId(next) || !canMove(mask, last, next)) {
+                return false;
+            }
+            mask |= 1 << next;
+            last = next;
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of the pattern in [0, {@link #count()})
+     * @throws IllegalArgumentException if the pattern is not in this space
+     */
+    public long rank(Pattern pattern) {
+        if (!contains(pattern)) {
+            throw new IllegalArgumentException(pattern + " is not a valid pattern of this space!");
+        }
+        count();
+
+        long index = 0;
+        int mask = 0;
+        int last = -1;
+        for (int length = 0; length < pattern.size(); length++) {
+            if (length >= mMinLength) {
+                // the pattern which stops here comes first
+                index++;
+            }
+            int target = pattern.get(length);
+            for (int next = 0; next < target; next++) {
+                if (canMove(mask, last, next)) {
+                    index += countFrom(mask | (1 << next), next, length + 1);
+                }
+            }
+            mask |= 1 << target;
+            last = target;
+        }
+        return index;
+    }
+
+    /**
+     * @param index index in [0, {@link #count()})
+     * @return the pattern at the index
+     */
+    public Pattern unrank(long index) {
+        long count = count();
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException(String.format("index out of range: %d, valid range is [0, %d)",
+                    index, count));
+        }
+
+        int[] ids = new int[mMaxLength];
+        int length = 0;
+        int mask = 0;
+        int last = -1;
+        while (true) {
+            if (length >= mMinLength) {
+                if (index == 0) {
+                    break;
+                }
+                index--;
+            }
+            int next = 0;
+            for (; next < mTotalSize; next++) {
+                if (canMove(mask, last, next)) {
+                    long ways = countFrom(mask | (1 << next), next, length + 1);
+                    if (index < ways) {
+                        break;
+                    }
+                    index -= ways;
+                }
+            }
+            if (next == mTotalSize) {
+                throw new IllegalStateException("index is not found, the memo is inconsistent!");
+            }
+            ids[length++] = next;
+            mask |= 1 << next;
+            last = next;
+        }
+        return new Pattern(Arrays.copyOf(ids, length));
+    }
+
+    /**
+     * @return a pattern drawn uniformly at random from this space
+     */
+    public Pattern sample(Random random) {
+        return unrank(nextLong(random, count()));
+    }
+
+    /**
+     * @return whether a move from last to next is valid, last is -1 for the first node
+     */
+    private boolean canMove(int mask, int last, int next) {
+        int bit = 1 << next;
+        if ((mask & bit) != 0) {
+            return false;
+        }
+        return last < 0 || (mLinkMasks[last * mTotalSize + next] & ~mask) == 0;
+    }
+
+    /**
+     * @return count of the valid patterns starting with the visited nodes in mask and ending at last
+     */
+    private long countFrom(int mask, int last, int length) {
+        if (length == mMaxLength) {
+            return 1;
+        }
+        long memo = getMemo(mask, last);
+        if (memo != 0) {
+            return memo - 1;
+        }
+
+        long count = length >= mMinLength ? 1 : 0;
+        for (int next = 0; next < mTotalSize; next++) {
+            if (canMove(mask, last, next)) {
+                count = add(count, countFrom(mask | (1 << next), next, length + 1));
+            }
+        }
+        putMemo(mask, last, count);
+        return count;
+    }
+
+    private long getMemo(int mask, int last) {
+        if (last < 0) {
+            return 0;
+        }
+        if (mDenseMemo != null) {
+            return mDenseMemo.get(mask * mTotalSize + last);
+        }
+        return mSparseMemo.get(memoKey(mask, last));
+    }
+
+    private void putMemo(int mask, int last, long count) {
+        if (last < 0) {
+            return;
+        }
+        // racing tasks always put the same value
+        if (mDenseMemo != null) {
+            mDenseMemo.set(mask * mTotalSize + last, count + 1);
+        } else {
+            mSparseMemo.put(memoKey(mask, last), count + 1);
+        }
+    }
+
+    /**
+     * @return key of the state, never 0 since mask contains last
+     */
+    private static long memoKey(int mask, int last) {
+        return ((mask & 0xFFFFFFFFL) << 5) | last;
+    }
+
+    private static boolean isForkJoinSupported() {
+        try {
+            Class.forName("java.util.concurrent.ForkJoinPool");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static long add(long a, long b) {
+        long sum = a + b;
+        if (sum < 0) {
+            throw new IllegalStateException("pattern count overflows long, use a smaller max length!");
+        }
+        return sum;
+    }
+
+    /**
+     * @return a uniformly distributed long in [0, bound)
+     */
+    private static long nextLong(Random random, long bound) {
+        long bits;
+        long value;
+        do {
+            bits = random.nextLong() >>> 1;
+            value = bits % bound;
+        } while (bits - value + (bound - 1) < 0);
+        return value;
+    }
+
+    /**
+     * counts the states of the first FORK_DEPTH nodes in parallel, and the rest sequentially in each task.
+     */
+    private static final class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient PatternSpace mSpace;
+        private final int mMask;
+        private final int mLast;
+        private final int mLength;
+
+        CountTask(PatternSpace space, int mask, int last, int length) {
+            mSpace = space;
+            mMask = mask;
+            mLast = last;
+            mLength = length;
+        }
+
+        @Override
+        protected Long compute() {
+            PatternSpace space = mSpace;
+            if (mLength >= FORK_DEPTH || mLength == space.mMaxLength) {
+                return space.countFrom(mMask, mLast, mLength);
+            }
+
+            List<CountTask> tasks = new ArrayList<>();
+            for (int next = 0; next < space.mTotalSize; next++) {
+                if (space.canMove(mMask, mLast, next)) {
+                    CountTask task = new CountTask(space, mMask | (1 << next), next, mLength + 1);
+                    task.fork();
+                    tasks.add(task);
+                }
+            }
+            long count = mLength >= space.mMinLength ? 1 : 0;
+            for (CountTask task : tasks) {
+                count = add(count, task.join());
+            }
+            space.putMemo(mMask, mLast, count);
+            return count;
+        }
+    }
+
+    /**
+     * Open addressing hash table from non zero long keys to long values, 0 if absent.
+     * The keys are split into stripes by hash, each stripe is locked on its own, so the tasks rarely wait.
+     */
+    private static final class SparseMemo {
+        private static final int STRIPE_BITS = 6;
+        private static final int INITIAL_STRIPE_CAPACITY = 1024;
+
+        private final Stripe[] mStripes = new Stripe[1 << STRIPE_BITS];
+
+        SparseMemo() {
+            for (int i = 0; i < mStripes.length; i++) {
+                mStripes[i] = new Stripe();
+            }
+        }
+
+        long get(long key) {
+            long hash = hash(key);
+            return mStripes[(int) (hash >>> (64 - STRIPE_BITS))].get(key, (int) hash);
+        }
+
+        void put(long key, long value) {
+            long hash = hash(key);
+            mStripes[(int) (hash >>> (64 - STRIPE_BITS))].put(key, (int) hash, value);
+        }
+
+        private static long hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 29);
+        }
+
+        private static final class Stripe {
+            private long[] mKeys = new long[INITIAL_STRIPE_CAPACITY];
+            private long[] mValues = new long[INITIAL_STRIPE_CAPACITY];
+            private int mSize;
+
+            synchronized long get(long key, int hash) {
+                int mask = mKeys.length - 1;
+                for (int i = hash & mask; ; i = (i + 1) & mask) {
+                    long k = mKeys[i];
+                    if (k == key) {
+                        return mValues[i];
+                    }
+                    if (k == 0) {
+                        return 0;
+                    }
+                }
+            }
+
+            synchronized void put(long key, int hash, long value) {
+                if (insert(mKeys, mValues, key, hash, value)) {
+                    // keep the load factor under 1/2
+                    if (++mSize * 2 > mKeys.length) {
+                        resize();
+                    }
+                }
+            }
+
+            private void resize() {
+                long[] keys = new long[mKeys.length * 2];
+                long[] values = new long[keys.length];
+                for (int i = 0; i < mKeys.length; i++) {
+                    long key = mKeys[i];
+                    if (key != 0) {
+                        insert(keys, values, key, (int) hash(key), mValues[i]);
+                    }
+                }
+                mKeys = keys;
+                mValues = values;
+            }
+
+            /**
+             * @return true if the key is new
+             */
+            private static boolean insert(long[] keys, long[] values, long key, int hash, long value) {
+                int mask = keys.length - 1;
+                for (int i = hash & mask; ; i = (i + 1) & mask) {
+                    long k = keys[i];
+                    if (k == key || k == 0) {
+                        keys[i] = key;
+                        values[i] = value;
+                        return k == 0;
+                    }
+                }
+            }
+        }
+    }
+}
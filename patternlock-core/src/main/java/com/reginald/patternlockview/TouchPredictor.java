@@ -0,0 +1,130 @@
+package com.reginald.patternlockview;
+
+/**
+ * Predicts where the finger will be a short time after the latest touch sample, from the velocity and
+ * acceleration of the recent samples. The prediction is damped by a confidence from the count of samples
+ * and how steady the direction is, it's limited by a max distance, and it's dropped when the finger is
+ * slow or the samples are too far apart.
+ * <p>
+ * Predictions are only meant for drawing, never hit test a predicted point.
+ * 触摸点预测：根据最近的触摸采样推算手指位置，仅用于绘制。
+ */
+public final class TouchPredictor {
+    private static final int HISTORY_SIZE = 3;
+    // samples further apart than this are not continuous, e.g. the finger paused
+    private static final long MAX_SAMPLE_GAP = 50;
+    // in pixels per millisecond, slower fingers are not predicted to avoid jitter
+    private static final float MIN_SPEED = 0.05f;
+
+    private final long[] mTimes = new long[HISTORY_SIZE];
+    private final float[] mXs = new float[HISTORY_SIZE];
+    private final float[] mYs = new float[HISTORY_SIZE];
+    // index of the newest sample
+    private int mHead;
+    private int mCount;
+    private float mMaxDistance = Float.MAX_VALUE;
+
+    /**
+     * @param maxDistance max distance from the latest sample to the predicted point in pixels
+     */
+    public void setMaxDistance(float maxDistance) {
+        mMaxDistance = maxDistance;
+    }
+
+    public void reset() {
+        mCount = 0;
+    }
+
+    /**
+     * @param time event time of the sample in millis
+     */
+    public void addSample(long time, float x, float y) {
+        if (mCount > 0) {
+            long lastTime = mTimes[mHead];
+            if (time < lastTime) {
+                reset();
+            } else if (time == lastTime) {
+                // same frame, keep the latest position
+                mXs[mHead] = x;
+                mYs[mHead] = y;
+                return;
+            }
+        }
+        mHead = (mHead + 1) % HISTORY_SIZE;
+        mTimes[mHead] = time;
+        mXs[mHead] = x;
+        mYs[mHead] = y;
+        if (mCount < HISTORY_SIZE) {
+            mCount++;
+        }
+    }
+
+    /**
+     * @param horizon  time after the latest sample to predict in millis
+     * @param outPoint receives the predicted [x, y]
+     * @return false if there is no confident prediction, outPoint is not changed
+     */
+    public boolean predict(long horizon, float[] outPoint) {
+        if (mCount < 2 || horizon <= 0) {
+            return false;
+        }
+        int i0 = mHead;
+        int i1 = (i0 + HISTORY_SIZE - 1) % HISTORY_SIZE;
+        long dt1 = mTimes[i0] - mTimes[i1];
+        if (dt1 > MAX_SAMPLE_GAP) {
+            return false;
+        }
+        float vx = (mXs[i0] - mXs[i1]) / dt1;
+        float vy = (mYs[i0] - mYs[i1]) / dt1;
+        float speed = (float) Math.hypot(vx, vy);
+        if (speed < MIN_SPEED) {
+            return false;
+        }
+
+        // a single velocity is a guess, a steady direction over three samples is trusted
+        float confidence = 0.5f;
+        float ax = 0;
+        float ay = 0;
+        if (mCount >= 3) {
+            int i2 = (i1 + HISTORY_SIZE - 1) % HISTORY_SIZE;
+            long dt2 = mTimes[i1] - mTimes[i2];
+            if (dt2 <= MAX_SAMPLE_GAP) {
+                float lastVx = (mXs[i1] - mXs[i2]) / dt2;
+                float lastVy = (mYs[i1] - mYs[i2]) / dt2;
+                float lastSpeed = (float) Math.hypot(lastVx, lastVy);
+                if (lastSpeed > 0) {
+                    float cos = (vx * lastVx + vy * lastVy) / (speed * lastSpeed);
+                    confidence = Math.max(0f, cos);
+                    float dt = (dt1 + dt2) / 2f;
+                    ax = (vx - lastVx) / dt;
+                    ay = (vy - lastVy) / dt;
+                }
+            }
+        }
+        if (confidence <= 0) {
+            return false;
+        }
+
+        float h = horizon;
+        float dx = vx * h * confidence;
+        float dy = vy * h * confidence;
+        // acceleration is noisier than velocity, damp it twice
+        float accelDx = 0.5f * ax * h * h * confidence * confidence;
+        float accelDy = 0.5f * ay * h * h * confidence * confidence;
+        if ((dx + accelDx) * vx + (dy + accelDy) * vy > 0) {
+            dx += accelDx;
+            dy += accelDy;
+        }
+        // otherwise a braking finger would be predicted to move backwards
+
+        float distance = (float) Math.hypot(dx, dy);
+        if (distance > mMaxDistance) {
+            float scale = mMaxDistance / distance;
+            dx *= scale;
+            dy *= scale;
+        }
+        outPoint[0] = mXs[i0] + dx;
+        outPoint[1] = mYs[i0] + dy;
+        return true;
+    }
+}
@@ -0,0 +1,218 @@
+package com.reginald.patternlockview;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class GestureRecorderTest {
+    private static final int ACTION_DOWN = 0;
+    private static final int ACTION_UP = 1;
+    private static final int ACTION_MOVE = 2;
+
+    @Test
+    public void roundTrip() {
+        GestureRecorder recorder = new GestureRecorder(64);
+        // a time far in the future, negative positions and a move back in time all use zigzag deltas
+        long time = Long.MAX_VALUE / 2;
+        recorder.recordTouch(time, ACTION_DOWN, 100.5f, 200.25f);
+        recorder.recordTouch(time + 8, ACTION_MOVE, -30.0625f, 1e6f);
+        recorder.recordNode(time + 9, 4);
+        recorder.recordTouch(time + 3, ACTION_MOVE, 0f, -1e6f);
+        recorder.recordNode(time + 16, 1023);
+        recorder.recordFinish(time + 20, -2);
+        recorder.recordTouch(0, ACTION_UP, 12f, 12f);
+        recorder.recordFinish(Long.MIN_VALUE / 2, Integer.MAX_VALUE);
+        assertEquals(8, recorder.getPendingCount());
+
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        assertEquals(8, recorder.drainTo(out));
+        assertEquals(0, recorder.getPendingCount());
+        out.flip();
+
+        List<String> expected = new ArrayList<>();
+        expected.add(touch(time, ACTION_DOWN, 100.5f, 200.25f));
+        expected.add(touch(time + 8, ACTION_MOVE, -30.0625f, 1e6f));
+        expected.add(node(time + 9, 4));
+        expected.add(touch(time + 3, ACTION_MOVE, 0f, -1e6f));
+        expected.add(node(time + 16, 1023));
+        expected.add(finish(time + 20, -2));
+        expected.add(touch(0, ACTION_UP, 12f, 12f));
+        expected.add(finish(Long.MIN_VALUE / 2, Integer.MAX_VALUE));
+        assertEquals(expected, decode(out));
+    }
+
+    @Test
+    public void positionsAreRounded() {
+        GestureRecorder recorder = new GestureRecorder(4);
+        recorder.recordTouch(1, ACTION_MOVE, 10.01f, -10.01f);
+        ByteBuffer out = ByteBuffer.allocate(64);
+        recorder.drainTo(out);
+        out.flip();
+        assertEquals(touch(1, ACTION_MOVE, 10f, -10f), decode(out).get(0));
+    }
+
+    @Test
+    public void drainInSmallBuffers() throws Exception {
+        GestureRecorder recorder = new GestureRecorder(1024);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            float x = (i * 37 % 1080) - 540.5f;
+            float y = (i * 53 % 1920) / 16f;
+            recorder.recordTouch(i * 8L, ACTION_MOVE, x, y);
+            expected.add(touch(i * 8L, ACTION_MOVE, x, y));
+        }
+
+        // one record per buffer at most, the delta encoding goes on across the buffers
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ByteBuffer out = ByteBuffer.allocate(GestureRecorder.MAX_RECORD_SIZE + 5);
+        int drained = 0;
+        int count;
+        do {
+            out.clear();
+            count = recorder.drainTo(out);
+            drained += count;
+            stream.write(out.array(), 0, out.position());
+        } while (count > 0);
+        assertEquals(1000, drained);
+        assertEquals(expected, decode(ByteBuffer.wrap(stream.toByteArray())));
+
+        // a new stream has its own header and restarts the deltas
+        recorder.recordNode(5, 2);
+        recorder.resetStream();
+        stream.reset();
+        assertEquals(1, recorder.drainTo(Channels.newChannel(stream)));
+        List<String> records = decode(ByteBuffer.wrap(stream.toByteArray()));
+        assertEquals(1, records.size());
+        assertEquals(node(5, 2), records.get(0));
+    }
+
+    @Test
+    public void overflowIsCounted() {
+        GestureRecorder recorder = new GestureRecorder(100);
+        assertEquals(128, recorder.getCapacity());
+        for (int i = 0; i < 300; i++) {
+            recorder.recordNode(i, i % 9);
+        }
+        assertEquals(128, recorder.getPendingCount());
+        assertEquals(300 - 128, recorder.getDroppedCount());
+
+        ByteBuffer out = ByteBuffer.allocate(128 * GestureRecorder.MAX_RECORD_SIZE + 5);
+        recorder.drainTo(out);
+        out.flip();
+        List<String> records = decode(out);
+        assertEquals(300, records.size() + recorder.getDroppedCount());
+        // the oldest records are kept
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(node(i, i % 9), records.get(i));
+        }
+
+        // drained space can be used again
+        recorder.recordNode(1000, 1);
+        assertEquals(1, recorder.getPendingCount());
+    }
+
+    @Test
+    public void concurrentWriterAndReader() throws Exception {
+        final int total = 200000;
+        final GestureRecorder recorder = new GestureRecorder(256);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < total; i++) {
+                    recorder.recordTouch(i, ACTION_MOVE, i % 1000, -(i % 777));
+                }
+            }
+        });
+        writer.start();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ByteBuffer out = ByteBuffer.allocate(4096);
+        while (writer.isAlive() || recorder.getPendingCount() > 0) {
+            out.clear();
+            recorder.drainTo(out);
+            stream.write(out.array(), 0, out.position());
+        }
+        writer.join();
+        out.clear();
+        recorder.drainTo(out);
+        stream.write(out.array(), 0, out.position());
+
+        final long[] decoded = new long[1];
+        final long[] lastTime = {-1};
+        GestureRecorder.decode(ByteBuffer.wrap(stream.toByteArray()), new GestureRecorder.Visitor() {
+            @Override
+            public void onTouch(long time, int action, float x, float y) {
+                // records are never torn or reordered, only dropped when the buffer is full
+                int i = (int) time;
+                assertEquals(i % 1000, x, 0f);
+                assertEquals(-(i % 777), y, 0f);
+                if (time <= lastTime[0]) {
+                    throw new AssertionError("record out of order: " + time + " after " + lastTime[0]);
+                }
+                lastTime[0] = time;
+                decoded[0]++;
+            }
+
+            @Override
+            public void onNode(long time, int nodeId) {
+                throw new AssertionError("unexpected node record");
+            }
+
+            @Override
+            public void onFinish(long time, int result) {
+                throw new AssertionError("unexpected finish record");
+            }
+        });
+        assertEquals(total, decoded[0] + recorder.getDroppedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedStream() {
+        GestureRecorder recorder = new GestureRecorder(4);
+        recorder.recordTouch(Long.MAX_VALUE / 2, ACTION_MOVE, 1e6f, 1e6f);
+        ByteBuffer out = ByteBuffer.allocate(64);
+        recorder.drainTo(out);
+        out.flip();
+        out.limit(out.limit() - 1);
+        decode(out);
+    }
+
+    private static List<String> decode(ByteBuffer in) {
+        final List<String> records = new ArrayList<>();
+        GestureRecorder.decode(in, new GestureRecorder.Visitor() {
+            @Override
+            public void onTouch(long time, int action, float x, float y) {
+                records.add(touch(time, action, x, y));
+            }
+
+            @Override
+            public void onNode(long time, int nodeId) {
+                records.add(node(time, nodeId));
+            }
+
+            @Override
+            public void onFinish(long time, int result) {
+                records.add(finish(time, result));
+            }
+        });
+        return records;
+    }
+
+    private static String touch(long time, int action, float x, float y) {
+        return "touch " + time + " " + action + " " + x + " " + y;
+    }
+
+    private static String node(long time, int nodeId) {
+        return "node " + time + " " + nodeId;
+    }
+
+    private static String finish(long time, int result) {
+        return "finish " + time + " " + result;
+    }
+}
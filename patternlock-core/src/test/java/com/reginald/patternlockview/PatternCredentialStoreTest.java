@@ -0,0 +1,204 @@
+package com.reginald.patternlockview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ./gradlew :patternlock-core:test
+ */
+public class PatternCredentialStoreTest {
+    // keep the tests fast, the work factor doesn't change the logic
+    private static final int ITERATIONS = 100;
+
+    private static final Pattern PATTERN_A = new Pattern(new int[]{0, 1, 2, 5, 8});
+    private static final Pattern PATTERN_B = new Pattern(new int[]{6, 3, 0, 4, 8});
+
+    private File mFile;
+    private PatternCredentialStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("patternlock", ".store");
+        // an empty file is initialized as a new store
+        mStore = PatternCredentialStore.open(mFile);
+        mStore.setIterations(ITERATIONS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+        mFile.delete();
+    }
+
+    @Test
+    public void enrollAndVerify() throws IOException {
+        mStore.enroll(1, PATTERN_A);
+        mStore.enroll(2, PATTERN_B);
+
+        assertEquals(2, mStore.size());
+        assertTrue(mStore.verify(1, PATTERN_A));
+        assertTrue(mStore.verify(2, PATTERN_B));
+        assertFalse(mStore.verify(1, PATTERN_B));
+        assertFalse(mStore.verify(1, new Pattern(new int[]{0, 1, 2, 5})));
+        assertFalse(mStore.verify(3, PATTERN_A));
+
+        // the old password is replaced
+        mStore.enroll(1, PATTERN_B);
+        assertEquals(2, mStore.size());
+        assertFalse(mStore.verify(1, PATTERN_A));
+        assertTrue(mStore.verify(1, PATTERN_B));
+    }
+
+    @Test
+    public void reopen() throws IOException {
+        // more users than the initial capacity, in random order
+        for (int i = 0; i < 100; i++) {
+            mStore.enroll((i * 37) % 100, i % 2 == 0 ? PATTERN_A : PATTERN_B);
+        }
+        mStore.close();
+
+        mStore = PatternCredentialStore.open(mFile);
+        assertEquals(100, mStore.size());
+        for (int i = 0; i < 100; i++) {
+            long userId = (i * 37) % 100;
+            assertTrue(mStore.contains(userId));
+            assertTrue(mStore.verify(userId, i % 2 == 0 ? PATTERN_A : PATTERN_B));
+            assertFalse(mStore.verify(userId, i % 2 == 0 ? PATTERN_B : PATTERN_A));
+        }
+    }
+
+    @Test
+    public void remove() throws IOException {
+        mStore.enroll(1, PATTERN_A);
+        mStore.enroll(2, PATTERN_B);
+        mStore.enroll(3, PATTERN_A);
+
+        assertTrue(mStore.remove(2));
+        assertFalse(mStore.remove(2));
+        assertEquals(2, mStore.size());
+        assertFalse(mStore.contains(2));
+        assertFalse(mStore.verify(2, PATTERN_B));
+        assertTrue(mStore.verify(1, PATTERN_A));
+        assertTrue(mStore.verify(3, PATTERN_A));
+
+        mStore.close();
+        mStore = PatternCredentialStore.open(mFile);
+        assertEquals(2, mStore.size());
+        assertFalse(mStore.contains(2));
+        assertTrue(mStore.verify(3, PATTERN_A));
+    }
+
+    @Test
+    public void verifyAny() throws Exception {
+        mStore.enroll(10, PATTERN_A);
+        mStore.enroll(20, PATTERN_B);
+
+        assertEquals(1, mStore.verifyAny(PATTERN_B, new long[]{10, 20, 30}));
+        assertEquals(0, mStore.verifyAny(PATTERN_A, new long[]{10, 20, 30}));
+        assertEquals(-1, mStore.verifyAny(PATTERN_A, new long[]{20, 30}));
+        assertEquals(-1, mStore.verifyAny(new Pattern(new int[]{4, 5, 6, 7}), new long[]{10, 20}));
+    }
+
+    @Test
+    public void upgradeIterations() throws IOException {
+        mStore.enroll(1, PATTERN_A);
+        assertEquals(ITERATIONS, mStore.getRecordIterations(1));
+
+        mStore.setIterations(ITERATIONS * 2);
+        // a wrong password never upgrades the record
+        assertFalse(mStore.verify(1, PATTERN_B));
+        assertEquals(ITERATIONS, mStore.getRecordIterations(1));
+
+        assertTrue(mStore.verify(1, PATTERN_A));
+        assertEquals(ITERATIONS * 2, mStore.getRecordIterations(1));
+        assertTrue(mStore.verify(1, PATTERN_A));
+        assertFalse(mStore.verify(1, PATTERN_B));
+
+        mStore.close();
+        mStore = PatternCredentialStore.open(mFile);
+        assertEquals(ITERATIONS * 2, mStore.getRecordIterations(1));
+        assertTrue(mStore.verify(1, PATTERN_A));
+    }
+
+    @Test
+    public void randomChangesMatchModel() throws IOException {
+        // every change only writes the records which differ between the two copies, check them against a map
+        Map<Long, Pattern> model = new TreeMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 600; i++) {
+            long userId = random.nextInt(200) - 100;
+            int op = random.nextInt(10);
+            if (op < 6) {
+                Pattern password = random.nextBoolean() ? PATTERN_A : PATTERN_B;
+                mStore.enroll(userId, password);
+                model.put(userId, password);
+            } else if (op < 9) {
+                assertEquals(model.remove(userId) != null, mStore.remove(userId));
+            } else {
+                mStore.close();
+                mStore = PatternCredentialStore.open(mFile);
+                mStore.setIterations(ITERATIONS);
+            }
+            assertEquals(model.size(), mStore.size());
+        }
+
+        mStore.close();
+        mStore = PatternCredentialStore.open(mFile);
+        for (long userId = -100; userId < 100; userId++) {
+            Pattern password = model.get(userId);
+            assertEquals(password != null, mStore.contains(userId));
+            if (password != null) {
+                assertTrue(mStore.verify(userId, password));
+                assertFalse(mStore.verify(userId, password == PATTERN_A ? PATTERN_B : PATTERN_A));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidFile() throws IOException {
+        mStore.close();
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(10);
+        } finally {
+            file.close();
+        }
+        mStore = PatternCredentialStore.open(mFile);
+    }
+
+    @Test
+    public void deriveKeyMatchesPbkdf2() throws Exception {
+        byte[] salt = new byte[16];
+        for (int i = 0; i < salt.length; i++) {
+            salt[i] = (byte) (i * 31);
+        }
+        // node ids below 128 are encoded as bytes below 128, which PBEKeySpec turns back into the same bytes
+        byte[] encoded = PatternCredentialStore.encode(PATTERN_A);
+        char[] chars = new char[encoded.length];
+        for (int i = 0; i < encoded.length; i++) {
+            chars[i] = (char) encoded[i];
+        }
+
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        for (int iterations : new int[]{1, 2, 1000}) {
+            byte[] expected = factory.generateSecret(new PBEKeySpec(chars, salt, iterations, 256)).getEncoded();
+            assertArrayEquals(expected, PatternCredentialStore.deriveKey(encoded, salt, iterations));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.reginald.patternlockview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PatternGridTest {
+
+    @Test
+    public void midNodesMatchFloatAutoLink() {
+        for (int size = 3; size <= 5; size++) {
+            checkMidNodes(new PatternGrid(size));
+        }
+        checkMidNodes(new PatternGrid(3, 5));
+        checkMidNodes(new PatternGrid(6, 4));
+    }
+
+    @Test
+    public void midNodesOfLargeGrid() {
+        // above LINK_TABLE_MAX_NODES the mid nodes are stepped by gcd instead of looked up
+        PatternGrid grid = new PatternGrid(17);
+        assertTrue(grid.getTotalSize() > PatternGrid.LINK_TABLE_MAX_NODES);
+        checkMidNodes(grid);
+    }
+
+    @Test
+    public void midNodesOf3x3() {
+        PatternGrid grid = new PatternGrid(3);
+        int[] midNodes = new int[grid.getMaxMidNodeCount()];
+        assertEquals(1, grid.getMidNodes(0, 8, midNodes));
+        assertEquals(4, midNodes[0]);
+        assertEquals(1, grid.getMidNodes(6, 0, midNodes));
+        assertEquals(3, midNodes[0]);
+        assertEquals(0, grid.getMidNodes(0, 5, midNodes));
+        assertEquals(0, grid.getMidNodes(4, 4, midNodes));
+    }
+
+    @Test
+    public void ensureValidPassword() {
+        PatternGrid grid = new PatternGrid(3);
+        grid.ensureValidPassword(new int[]{0, 4, 8});
+        grid.ensureValidPassword(Arrays.asList(0, 4, 8));
+        assertTrue(grid.isValidNodeId(8));
+        assertFalse(grid.isValidNodeId(9));
+        assertFalse(grid.isValidNodeId(-1));
+        assertInvalid(grid, new int[]{0, 9});
+        assertInvalid(grid, new int[]{-1});
+        assertInvalid(grid, null);
+    }
+
+    private static void assertInvalid(PatternGrid grid, int[] password) {
+        try {
+            grid.ensureValidPassword(password);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("invalid password is accepted: " + Arrays.toString(password));
+    }
+
+    private static void checkMidNodes(PatternGrid grid) {
+        int[] midNodes = new int[grid.getMaxMidNodeCount()];
+        for (int first = 0; first < grid.getTotalSize(); first++) {
+            for (int second = 0; second < grid.getTotalSize(); second++) {
+                int count = grid.getMidNodes(first, second, midNodes);
+                assertArrayEquals(first + " -> " + second, floatAutoLink(grid, first, second),
+                        Arrays.copyOf(midNodes, count));
+            }
+        }
+    }
+
+    /**
+     * the mid nodes found by the float slope stepping of the old PatternLockView.autoLinkNode()
+     */
+    private static int[] floatAutoLink(PatternGrid grid, int first, int second) {
+        int firstRow = grid.getRow(first);
+        int firstColumn = grid.getColumn(first);
+        int secondRow = grid.getRow(second);
+        int secondColumn = grid.getColumn(second);
+        int xDiff = secondColumn - firstColumn;
+        int yDiff = secondRow - firstRow;
+        List<Integer> nodes = new ArrayList<>();
+        if (yDiff == 0 && xDiff == 0) {
+            // no mid nodes
+        } else if (yDiff == 0) {
+            int step = xDiff > 0 ? 1 : -1;
+            int column = firstColumn;
+            while ((column += step) != secondColumn) {
+                nodes.add(grid.getNodeId(firstRow, column));
+            }
+        } else if (xDiff == 0) {
+            int step = yDiff > 0 ? 1 : -1;
+            int row = firstRow;
+            while ((row += step) != secondRow) {
+                nodes.add(grid.getNodeId(row, firstColumn));
+            }
+        } else {
+            float tan = yDiff / (float) xDiff;
+            int xstep = xDiff > 0 ? 1 : -1;
+            int xDelta = 0;
+            while ((xDelta += xstep) != xDiff) {
+                float yDelta = xDelta * tan;
+                int yDeltaRounded = Math.round(yDelta);
+                if (Math.abs(yDelta - yDeltaRounded) < 1e-6) {
+                    nodes.add(grid.getNodeId(firstRow + yDeltaRounded, firstColumn + xDelta));
+                }
+            }
+        }
+        int[] result = new int[nodes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = nodes.get(i);
+        }
+        return result;
+    }
+}
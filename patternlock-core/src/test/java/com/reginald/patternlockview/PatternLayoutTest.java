@@ -0,0 +1,285 @@
+package com.reginald.patternlockview;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PatternLayoutTest {
+    private static final float DELTA = 1e-4f;
+
+    @Test
+    public void measureMatchesOldSpacingMode() {
+        int[] sizes = {0, 100, 300, 480, 1080};
+        for (int size = 3; size <= 5; size++) {
+            for (int width : sizes) {
+                for (int height : sizes) {
+                    for (int exactly = 0; exactly < 4; exactly++) {
+                        // enough room, paddings and spacing shrunk, node size shrunk
+                        checkMeasure(size, 30, 20, 60, width, (exactly & 1) != 0, height, (exactly & 2) != 0);
+                        checkMeasure(size, 90, 20, 60, width, (exactly & 1) != 0, height, (exactly & 2) != 0);
+                        checkMeasure(size, 200, 20, 60, width, (exactly & 1) != 0, height, (exactly & 2) != 0);
+                        checkMeasure(size, 60, 0, 0, width, (exactly & 1) != 0, height, (exactly & 2) != 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void measureMatchesOldIdenticalAreaMode() {
+        int[] sizes = {0, 100, 300, 481, 1080};
+        for (int size = 3; size <= 5; size++) {
+            for (int width : sizes) {
+                for (int height : sizes) {
+                    for (int exactly = 0; exactly < 4; exactly++) {
+                        checkMeasure(size, 30, 20, -1, width, (exactly & 1) != 0, height, (exactly & 2) != 0);
+                        checkMeasure(size, 500, 0, -1, width, (exactly & 1) != 0, height, (exactly & 2) != 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void layoutMatchesOld() {
+        for (int size = 3; size <= 5; size++) {
+            for (float spacing : new float[]{-1, 60}) {
+                PatternLayout layout = newLayout(size, 50, 20, spacing);
+                layout.measure(1080, true, 1500, true);
+                layout.layout(1080, 1500);
+                int nodeSize = layout.getMeasuredNodeSize();
+                float measuredSpacing = layout.getMeasuredSpacing();
+                for (int n = 0; n < size * size; n++) {
+                    int row = n / size;
+                    int col = n % size;
+                    int l;
+                    int t;
+                    if (measuredSpacing < 0) {
+                        float areaSize = Math.min(1080 / size, 1500 / size);
+                        float widthPadding = (1080 - size * areaSize) / 2;
+                        float heightPadding = (1500 - size * areaSize) / 2;
+                        l = (int) (widthPadding + col * areaSize + (areaSize - nodeSize) / 2);
+                        t = (int) (heightPadding + row * areaSize + (areaSize - nodeSize) / 2);
+                    } else {
+                        float widthPadding = (1080 - size * nodeSize - measuredSpacing * (size - 1)) / 2;
+                        float heightPadding = (1500 - size * nodeSize - measuredSpacing * (size - 1)) / 2;
+                        l = (int) (widthPadding + col * (nodeSize + measuredSpacing));
+                        t = (int) (heightPadding + row * (nodeSize + measuredSpacing));
+                    }
+                    assertEquals(l, layout.getNodeLeft(n));
+                    assertEquals(t, layout.getNodeTop(n));
+                    assertEquals(l + nodeSize, layout.getNodeRight(n));
+                    assertEquals(t + nodeSize, layout.getNodeBottom(n));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void hitTestMatchesBruteForce() {
+        for (int size = 3; size <= 5; size++) {
+            for (float spacing : new float[]{-1, 60}) {
+                for (float expand : new float[]{0, 15, 80}) {
+                    for (boolean circle : new boolean[]{false, true}) {
+                        PatternLayout layout = newLayout(size, 50, 20, spacing);
+                        layout.setNodeAreaExpand(expand);
+                        layout.setNodeTouchCircle(circle);
+                        layout.measure(1080, true, 1080, true);
+                        layout.layout(1080, 1080);
+                        for (int y = -20; y < 1100; y += 3) {
+                            for (int x = -20; x < 1100; x += 3) {
+                                assertEquals(x + ", " + y, bruteForceNodeAt(layout, x, y, expand, circle),
+                                        layout.getNodeAt(x, y));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void nodesOnPathMatchBruteForce() {
+        Random random = new Random(5);
+        int[] outNodes = new int[25];
+        for (int size = 3; size <= 5; size++) {
+            PatternLayout layout = newLayout(size, 50, 20, 60);
+            layout.setNodeAreaExpand(15);
+            layout.setNodeTouchCircle(true);
+            layout.measure(1080, true, 1080, true);
+            layout.layout(1080, 1080);
+            segments:
+            for (int i = 0; i < 2000; i++) {
+                float startX = random.nextFloat() * 1080;
+                float startY = random.nextFloat() * 1080;
+                float endX = random.nextFloat() * 1080;
+                float endY = random.nextFloat() * 1080;
+                int count = layout.getNodesOnPath(startX, startY, endX, endY, outNodes);
+
+                double lastT = -1;
+                int expected = 0;
+                for (int n = 0; n < size * size; n++) {
+                    double radius = (layout.getNodeRight(n) - layout.getNodeLeft(n)) / 2.0 + 15;
+                    double distance = segmentDistance(startX, startY, endX, endY,
+                            (layout.getNodeLeft(n) + layout.getNodeRight(n)) / 2.0,
+                            (layout.getNodeTop(n) + layout.getNodeBottom(n)) / 2.0);
+                    if (Math.abs(distance - radius) < 0.01) {
+                        // the segment touches the node area, float rounding may go either way
+                        continue segments;
+                    }
+                    if (distance < radius) {
+                        expected++;
+                    }
+                }
+                assertEquals(expected, count);
+                // sorted by where the segment enters the node area
+                for (int k = 0; k < count; k++) {
+                    int n = outNodes[k];
+                    double t = entryTime(layout, n, 15, startX, startY, endX, endY);
+                    assertTrue(t >= lastT - 1e-4);
+                    lastT = t;
+                }
+            }
+        }
+    }
+
+    private static PatternLayout newLayout(int size, float nodeSize, float padding, float spacing) {
+        PatternLayout layout = new PatternLayout();
+        layout.setGrid(new PatternGrid(size));
+        layout.setNodeSize(nodeSize);
+        layout.setPadding(padding);
+        layout.setSpacing(spacing);
+        return layout;
+    }
+
+    private static void checkMeasure(int size, float nodeSize, float padding, float spacing,
+                                     int width, boolean isWidthExactly, int height, boolean isHeightExactly) {
+        PatternLayout layout = newLayout(size, nodeSize, padding, spacing);
+        layout.measure(width, isWidthExactly, height, isHeightExactly);
+        float[] expected = oldMeasure(size, nodeSize, padding, spacing, width, isWidthExactly, height,
+                isHeightExactly);
+        String message = String.format("size = %d, nodeSize = %f, spacing = %f, %d%s * %d%s", size, nodeSize,
+                spacing, width, isWidthExactly ? "!" : "", height, isHeightExactly ? "!" : "");
+        assertEquals(message, (int) expected[0], layout.getMeasuredWidth());
+        assertEquals(message, (int) expected[1], layout.getMeasuredHeight());
+        assertEquals(message, (int) expected[2], layout.getMeasuredNodeSize());
+        assertEquals(message, expected[3], layout.getMeasuredPadding(), DELTA);
+        assertEquals(message, expected[4], layout.getMeasuredSpacing(), DELTA);
+    }
+
+    /**
+     * the measure of the old PatternLockView.onMeasure() for a size * size grid
+     *
+     * @return [width, height, node size, padding, spacing]
+     */
+    private static float[] oldMeasure(int mSize, float mNodeSize, float mPadding, float mSpacing,
+                                      int width, boolean isWidthExactly, int height, boolean isHeightExactly) {
+        boolean needRemeasure = false;
+        int gaps = mSize - 1;
+        float nodesize = mNodeSize;
+        float mMeasuredPadding = mPadding;
+        float mMeasuredSpacing = mSpacing;
+        float maxNodeWidth, maxNodeHeight, maxNodeSize;
+
+        if (mSpacing >= 0) {
+            maxNodeWidth = ((width - mPadding * 2 - mSpacing * gaps) / mSize);
+            maxNodeHeight = ((height - mPadding * 2 - mSpacing * gaps) / mSize);
+            maxNodeSize = maxNodeWidth < maxNodeHeight ? maxNodeWidth : maxNodeHeight;
+            if (nodesize > maxNodeSize) {
+                int xRemains = (int) (width - mSize * nodesize);
+                int yRemains = (int) (height - mSize * nodesize);
+                int minRemains = xRemains < yRemains ? xRemains : yRemains;
+                int paddingsAndSpacings = (int) (mPadding * 2 + mSpacing * gaps);
+                if (minRemains > 0 && paddingsAndSpacings > 0) {
+                    float shrinkRatio = (float) minRemains / paddingsAndSpacings;
+                    mMeasuredPadding *= shrinkRatio;
+                    mMeasuredSpacing *= shrinkRatio;
+                } else {
+                    nodesize = maxNodeSize;
+                }
+            } else {
+                if (!isWidthExactly) {
+                    width = (int) (mPadding * 2 + mSpacing * gaps + mSize * nodesize);
+                }
+                if (!isHeightExactly) {
+                    height = (int) (mPadding * 2 + mSpacing * gaps + mSize * nodesize);
+                }
+            }
+            if (nodesize <= 0) {
+                needRemeasure = true;
+            }
+        }
+
+        if (needRemeasure || mSpacing < 0) {
+            mMeasuredSpacing = -1;
+            nodesize = mNodeSize;
+            maxNodeWidth = width / mSize;
+            maxNodeHeight = height / mSize;
+            maxNodeSize = maxNodeWidth < maxNodeHeight ? maxNodeWidth : maxNodeHeight;
+            if (nodesize > maxNodeSize) {
+                nodesize = maxNodeSize;
+            }
+        }
+
+        if (width > height && !isWidthExactly) {
+            width = height;
+        } else if (width < height && !isHeightExactly) {
+            height = width;
+        }
+        return new float[]{width, height, (int) nodesize, mMeasuredPadding, mMeasuredSpacing};
+    }
+
+    /**
+     * the first node in id order whose touch area contains the position
+     */
+    private static int bruteForceNodeAt(PatternLayout layout, float x, float y, float expand, boolean circle) {
+        for (int n = 0; n < layout.getGrid().getTotalSize(); n++) {
+            int l = layout.getNodeLeft(n);
+            int t = layout.getNodeTop(n);
+            int r = layout.getNodeRight(n);
+            int b = layout.getNodeBottom(n);
+            if (circle) {
+                float radius = (r - l) / 2f + expand;
+                float dx = x - (l + r) / 2f;
+                float dy = y - (t + b) / 2f;
+                if (dx * dx + dy * dy <= radius * radius) {
+                    return n;
+                }
+            } else if (x >= l - expand && x < r + expand && y >= t - expand && y < b + expand) {
+                return n;
+            }
+        }
+        return PatternLayout.NO_NODE;
+    }
+
+    private static double segmentDistance(double x1, double y1, double x2, double y2, double px, double py) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - x1) * dx + (py - y1) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x1 + t * dx - px, y1 + t * dy - py);
+    }
+
+    /**
+     * @return position (0 ~ 1) on the segment where it enters the circle touch area of the node
+     */
+    private static double entryTime(PatternLayout layout, int n, float expand,
+                                    double x1, double y1, double x2, double y2) {
+        double radius = (layout.getNodeRight(n) - layout.getNodeLeft(n)) / 2.0 + expand;
+        double fx = x1 - (layout.getNodeLeft(n) + layout.getNodeRight(n)) / 2.0;
+        double fy = y1 - (layout.getNodeTop(n) + layout.getNodeBottom(n)) / 2.0;
+        double c = fx * fx + fy * fy - radius * radius;
+        if (c <= 0) {
+            return 0;
+        }
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double a = dx * dx + dy * dy;
+        double b = 2 * (fx * dx + fy * dy);
+        return (-b - Math.sqrt(b * b - 4 * a * c)) / (2 * a);
+    }
+}
@@ -0,0 +1,81 @@
+package com.reginald.patternlockview;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PatternSpaceTest {
+    private static final int MIN_LENGTH = 4;
+    private static final long COUNT_3X3 = 389112L;
+    private static final long COUNT_4X4 = 4350069823024L;
+
+    @Test
+    public void count3x3() {
+        assertEquals(COUNT_3X3, new PatternSpace(3, MIN_LENGTH).count());
+    }
+
+    @Test
+    public void count4x4() {
+        PatternGrid grid = new PatternGrid(4);
+        assertEquals(COUNT_4X4, new PatternSpace(4, MIN_LENGTH).count());
+        // the dense memo and the striped sparse memo, counted sequentially and in a fork join pool
+        assertEquals(COUNT_4X4, new PatternSpace(grid, MIN_LENGTH, 16, true, false).count());
+        assertEquals(COUNT_4X4, new PatternSpace(grid, MIN_LENGTH, 16, true, true).count());
+        assertEquals(COUNT_4X4, new PatternSpace(grid, MIN_LENGTH, 16, false, false).count());
+        assertEquals(COUNT_4X4, new PatternSpace(grid, MIN_LENGTH, 16, false, true).count());
+    }
+
+    @Test
+    public void sparseMemoRankMatchesDense() {
+        PatternGrid grid = new PatternGrid(4);
+        PatternSpace dense = new PatternSpace(grid, MIN_LENGTH, 16, true, false);
+        PatternSpace sparse = new PatternSpace(grid, MIN_LENGTH, 16, false, true);
+        Random random = new Random(4);
+        for (int i = 0; i < 1000; i++) {
+            Pattern pattern = dense.sample(random);
+            assertEquals(dense.rank(pattern), sparse.rank(pattern));
+        }
+    }
+
+    @Test
+    public void rankUnrank3x3() {
+        PatternSpace space = new PatternSpace(3, MIN_LENGTH);
+        long count = space.count();
+        for (long i = 0; i < count; i++) {
+            assertEquals(i, space.rank(space.unrank(i)));
+        }
+    }
+
+    @Test
+    public void sampleIsValid() {
+        Random random = new Random(3);
+        for (int size = 3; size <= 4; size++) {
+            PatternSpace space = new PatternSpace(size, MIN_LENGTH);
+            PatternGrid grid = space.getGrid();
+            for (int i = 0; i < 1000; i++) {
+                Pattern pattern = space.sample(random);
+                int[] ids = pattern.toArray();
+                grid.ensureValidPassword(ids);
+                assertTrue(ids.length >= MIN_LENGTH && ids.length <= size * size);
+                assertTrue(space.contains(pattern));
+            }
+        }
+    }
+
+    @Test
+    public void containsFollowsAutoLinkRule() {
+        PatternSpace space = new PatternSpace(3, MIN_LENGTH);
+        assertTrue(space.contains(new Pattern(new int[]{0, 1, 2, 5})));
+        // too short
+        assertFalse(space.contains(new Pattern(new int[]{0, 1, 2})));
+        // 0 -> 2 jumps over 1, which is not visited yet
+        assertFalse(space.contains(new Pattern(new int[]{0, 2, 5, 8})));
+        assertTrue(space.contains(new Pattern(new int[]{1, 0, 2, 5})));
+        // a node is visited twice
+        assertFalse(space.contains(new Pattern(new int[]{0, 1, 0, 3})));
+    }
+}
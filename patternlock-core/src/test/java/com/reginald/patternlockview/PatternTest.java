@@ -0,0 +1,65 @@
+package com.reginald.patternlockview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PatternTest {
+
+    @Test
+    public void equalsAndHashCode() {
+        Pattern pattern = new Pattern(new int[]{0, 1, 2, 5});
+        Pattern same = new Pattern(Arrays.asList(0, 1, 2, 5));
+        assertEquals(pattern, same);
+        assertEquals(pattern.hashCode(), same.hashCode());
+        assertFalse(pattern.equals(new Pattern(new int[]{0, 1, 2})));
+        assertFalse(pattern.equals(new Pattern(new int[]{0, 1, 5, 2})));
+        assertFalse(pattern.equals(null));
+    }
+
+    @Test
+    public void stringAndList() {
+        Pattern pattern = new Pattern(new int[]{0, 4, 8});
+        assertEquals("[0-4-8]", pattern.getString());
+        assertEquals("[]", new Pattern(new int[0]).getString());
+        assertEquals(Arrays.asList(0, 4, 8), pattern.getList());
+        assertEquals(3, pattern.size());
+        assertEquals(4, pattern.get(1));
+    }
+
+    @Test
+    public void idsAreCopied() {
+        int[] ids = {0, 4, 8};
+        Pattern pattern = new Pattern(ids);
+        ids[0] = 1;
+        assertEquals(0, pattern.get(0));
+        pattern.toArray()[1] = 1;
+        assertArrayEquals(new int[]{0, 4, 8}, pattern.toArray());
+
+        List<Integer> list = pattern.getList();
+        try {
+            list.add(1);
+        } catch (UnsupportedOperationException e) {
+            return;
+        }
+        throw new AssertionError("the list of a pattern is modifiable!");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nullId() {
+        new Pattern(Arrays.asList(0, null, 8));
+    }
+
+    @Test
+    public void hashCodeMatchesArrays() {
+        // the same hash as the int[] keeps hash based collections of old and new patterns consistent
+        Pattern pattern = new Pattern(new int[]{3, 4, 5});
+        assertEquals(Arrays.hashCode(new int[]{3, 4, 5}), pattern.hashCode());
+        assertEquals(pattern.hashCode(), pattern.hashCode());
+    }
+}
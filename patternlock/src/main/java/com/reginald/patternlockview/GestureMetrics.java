@@ -0,0 +1,228 @@
+package com.reginald.patternlockview;
+
+/**
+ * Performance metrics of one gesture (from ACTION_DOWN to ACTION_UP) on a {@link PatternLockView}.
+ * All counters are primitive fields and the per-node arrays are allocated once, so collecting them
+ * does not allocate while the user is drawing.
+ * <p>
+ * The same instance is reused for every gesture, copy the values if they are needed after
+ * {@link PatternLockView.OnGestureMetricsListener#onGestureMetrics(GestureMetrics)} returns.
+ * 单次手势的性能统计数据。
+ */
+public final class GestureMetrics {
+    private static final long NO_FRAME = Long.MIN_VALUE;
+
+    final long mFrameBudgetNanos;
+
+    long mStartTime;
+    long mEndTime;
+    int mTouchEventCount;
+    int mTouchSampleCount;
+    long mTouchTimeNanos;
+    int mDrawCount;
+    long mDrawTimeNanos;
+    int mInvalidateCount;
+    long mCallBackTimeNanos;
+    int mFramesOverBudget;
+    long mMaxFrameLatencyNanos;
+    // start time of the first touch event waiting for its frame to be drawn
+    long mPendingFrameTime = NO_FRAME;
+
+    // touched nodes in order, with their touch time and touch-to-highlight latency
+    private int[] mNodeIds;
+    private long[] mNodeTouchTimes;
+    private int[] mNodeLatencies;
+    private int mNodeCount;
+    // nodes before this index have been drawn
+    private int mDrawnNodeCount;
+
+    GestureMetrics(int capacity, long frameBudgetNanos) {
+        mFrameBudgetNanos = frameBudgetNanos;
+        ensureCapacity(capacity);
+    }
+
+    void ensureCapacity(int capacity) {
+        if (mNodeIds == null || mNodeIds.length < capacity) {
+            mNodeIds = new int[capacity];
+            mNodeTouchTimes = new long[capacity];
+            mNodeLatencies = new int[capacity];
+        }
+    }
+
+    void begin(long uptimeMillis) {
+        mStartTime = uptimeMillis;
+        mEndTime = uptimeMillis;
+        mTouchEventCount = 0;
+        mTouchSampleCount = 0;
+        mTouchTimeNanos = 0;
+        mDrawCount = 0;
+        mDrawTimeNanos = 0;
+        mInvalidateCount = 0;
+        mCallBackTimeNanos = 0;
+        mFramesOverBudget = 0;
+        mMaxFrameLatencyNanos = 0;
+        mPendingFrameTime = NO_FRAME;
+        mNodeCount = 0;
+        mDrawnNodeCount = 0;
+    }
+
+    /**
+     * @param touchTime event time of the touch sample which selected the node, in uptime millis
+     */
+    void onNodeTouched(int nodeId, long touchTime) {
+        if (mNodeCount < mNodeIds.length) {
+            mNodeIds[mNodeCount] = nodeId;
+            mNodeTouchTimes[mNodeCount] = touchTime;
+            mNodeLatencies[mNodeCount] = -1;
+            mNodeCount++;
+        }
+    }
+
+    /**
+     * a touch event invalidated the view, its frame is measured in the next draw
+     */
+    void onFrameRequested(long startNanos) {
+        if (mPendingFrameTime == NO_FRAME) {
+            mPendingFrameTime = startNanos;
+        }
+    }
+
+    /**
+     * @param uptimeMillis time the drawing starts, the touched nodes are visible from this frame
+     */
+    void onDrawStart(long uptimeMillis) {
+        for (int i = mDrawnNodeCount; i < mNodeCount; i++) {
+            mNodeLatencies[i] = (int) (uptimeMillis - mNodeTouchTimes[i]);
+        }
+        mDrawnNodeCount = mNodeCount;
+    }
+
+    void onDrawEnd(long drawNanos, long endNanos) {
+        mDrawCount++;
+        mDrawTimeNanos += drawNanos;
+        if (mPendingFrameTime != NO_FRAME) {
+            long latency = endNanos - mPendingFrameTime;
+            if (latency > mFrameBudgetNanos) {
+                mFramesOverBudget++;
+            }
+            if (latency > mMaxFrameLatencyNanos) {
+                mMaxFrameLatencyNanos = latency;
+            }
+            mPendingFrameTime = NO_FRAME;
+        }
+    }
+
+    /**
+     * @return uptime millis of ACTION_DOWN
+     */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * @return duration from ACTION_DOWN to ACTION_UP in millis
+     */
+    public long getDuration() {
+        return mEndTime - mStartTime;
+    }
+
+    public int getTouchEventCount() {
+        return mTouchEventCount;
+    }
+
+    /**
+     * @return count of the touch samples processed, including the batched historical samples
+     * in continuous touch mode
+     */
+    public int getTouchSampleCount() {
+        return mTouchSampleCount;
+    }
+
+    /**
+     * @return time spent in onTouchEvent, including the callback time
+     */
+    public long getTouchTimeNanos() {
+        return mTouchTimeNanos;
+    }
+
+    public int getDrawCount() {
+        return mDrawCount;
+    }
+
+    /**
+     * @return time spent in onDraw of the lock view, node views draw themselves in non-flat mode
+     */
+    public long getDrawTimeNanos() {
+        return mDrawTimeNanos;
+    }
+
+    public int getInvalidateCount() {
+        return mInvalidateCount;
+    }
+
+    /**
+     * @return time spent in {@link PatternLockView.CallBack#onFinish(PatternLockView.Password)}
+     * or {@link PatternLockView.AsyncCallBack#onFinish(PatternLockView.Password, PatternLockView.Verification)}
+     */
+    public long getCallBackTimeNanos() {
+        return mCallBackTimeNanos;
+    }
+
+    /**
+     * @return count of frames finished drawing later than one frame budget after the touch event requesting them
+     */
+    public int getFramesOverBudget() {
+        return mFramesOverBudget;
+    }
+
+    public long getFrameBudgetNanos() {
+        return mFrameBudgetNanos;
+    }
+
+    /**
+     * @return max time from a touch event to the end of drawing its frame
+     */
+    public long getMaxFrameLatencyNanos() {
+        return mMaxFrameLatencyNanos;
+    }
+
+    /**
+     * @return count of the nodes touched by the user, including the auto linked ones
+     */
+    public int getNodeCount() {
+        return mNodeCount;
+    }
+
+    public int getNodeId(int index) {
+        return mNodeIds[index];
+    }
+
+    /**
+     * @return time from the touch sample which selected the node to the first frame showing it in millis,
+     * or -1 if the node is not drawn before the gesture ends
+     */
+    public int getNodeLatency(int index) {
+        return mNodeLatencies[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("GestureMetrics{ duration = ").append(getDuration())
+                .append("ms, touchEvents = ").append(mTouchEventCount)
+                .append(", touchSamples = ").append(mTouchSampleCount)
+                .append(", touchTime = ").append(mTouchTimeNanos / 1000).append("us")
+                .append(", draws = ").append(mDrawCount)
+                .append(", drawTime = ").append(mDrawTimeNanos / 1000).append("us")
+                .append(", invalidates = ").append(mInvalidateCount)
+                .append(", callBackTime = ").append(mCallBackTimeNanos / 1000).append("us")
+                .append(", framesOverBudget = ").append(mFramesOverBudget)
+                .append(", nodeLatencies = [");
+        for (int i = 0; i < mNodeCount; i++) {
+            if (i != 0) {
+                builder.append(", ");
+            }
+            builder.append(mNodeIds[i]).append(":").append(mNodeLatencies[i]).append("ms");
+        }
+        return builder.append("] }").toString();
+    }
+}
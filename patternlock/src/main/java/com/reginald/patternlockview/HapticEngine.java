@@ -0,0 +1,123 @@
+package com.reginald.patternlockview;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Vibrator;
+import android.view.HapticFeedbackConstants;
+import android.view.View;
+
+/**
+ * Sends the haptic feedback of the linked nodes out of the touch event handling.
+ * All the pulses requested in one frame are merged into one, which is sent on the next animation frame,
+ * either by {@link View#performHapticFeedback(int)} if a feedback constant is set and supported by
+ * the platform, or by {@link Vibrator#vibrate(long)} on a background thread.
+ * <p>
+ * {@link View#performHapticFeedback(int)} goes through the view root of the window, so it has to stay on the
+ * UI thread. It's still out of the touch event handling and called once per frame at most, and it follows the
+ * haptic feedback setting of the system, which a direct vibration would ignore.
+ * 触感反馈：同一帧内的多次振动请求合并为一次，并移出触摸事件处理流程。
+ */
+final class HapticEngine implements Runnable {
+    static final int NO_FEEDBACK_CONSTANT = -1;
+
+    private static HandlerThread sVibrateThread;
+    private static Handler sVibrateHandler;
+
+    private final View mView;
+    private final Vibrator mVibrator;
+    private final long mVibrateTime;
+    private final int mFeedbackConstant;
+    private boolean mIsScheduled;
+
+    private final Runnable mVibrateAction = new Runnable() {
+        @SuppressLint("MissingPermission")
+        @Override
+        public void run() {
+            try {
+                mVibrator.vibrate(mVibrateTime);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    };
+
+    /**
+     * @param vibrator         vibrator, may be null if a supported feedback constant is set
+     * @param feedbackConstant one of {@link HapticFeedbackConstants}, or {@link #NO_FEEDBACK_CONSTANT}
+     */
+    HapticEngine(View view, Vibrator vibrator, long vibrateTime, int feedbackConstant) {
+        mView = view;
+        mVibrator = vibrator;
+        mVibrateTime = vibrateTime;
+        mFeedbackConstant = isFeedbackConstantSupported(feedbackConstant) ? feedbackConstant : NO_FEEDBACK_CONSTANT;
+    }
+
+    /**
+     * request a pulse for a linked node, merged with the other ones requested before the next frame.
+     * UI thread only.
+     */
+    void requestPulse() {
+        if (mIsScheduled) {
+            return;
+        }
+        if (mFeedbackConstant == NO_FEEDBACK_CONSTANT && mVibrator == null) {
+            return;
+        }
+        mIsScheduled = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mView.postOnAnimation(this);
+        } else {
+            mView.post(this);
+        }
+    }
+
+    /**
+     * drop the pulse not sent yet.
+     */
+    void cancel() {
+        if (mIsScheduled) {
+            mView.removeCallbacks(this);
+            mIsScheduled = false;
+        }
+    }
+
+    @Override
+    public void run() {
+        mIsScheduled = false;
+        if (mFeedbackConstant != NO_FEEDBACK_CONSTANT) {
+            // view methods are UI thread only
+            mView.performHapticFeedback(mFeedbackConstant);
+        } else {
+            getVibrateHandler().post(mVibrateAction);
+        }
+    }
+
+    private static boolean isFeedbackConstantSupported(int feedbackConstant) {
+        switch (feedbackConstant) {
+            case HapticFeedbackConstants.LONG_PRESS:
+            case HapticFeedbackConstants.VIRTUAL_KEY:
+            case HapticFeedbackConstants.KEYBOARD_TAP:
+                return true;
+            case HapticFeedbackConstants.CLOCK_TICK:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+            case HapticFeedbackConstants.CONTEXT_CLICK:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return handler of the thread shared by all the lock views to call the vibrator
+     */
+    private static synchronized Handler getVibrateHandler() {
+        if (sVibrateHandler == null) {
+            sVibrateThread = new HandlerThread("PatternLockView-haptic");
+            sVibrateThread.start();
+            sVibrateHandler = new Handler(sVibrateThread.getLooper());
+        }
+        return sVibrateHandler;
+    }
+}
@@ -1,20 +1,27 @@
 package com.reginald.patternlockview;
 
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-import android.annotation.SuppressLint;
+import android.animation.Animator;
+import android.animation.AnimatorInflater;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.os.Vibrator;
 import android.util.AttributeSet;
@@ -23,7 +30,10 @@ import android.util.TypedValue;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.WindowManager;
+import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
+import android.view.animation.Transformation;
 
 /**
  * PatternLockView support two layout mode:
@@ -50,6 +60,11 @@ import android.view.animation.AnimationUtils;
  * <p>
  * 如果未设置lock_spacing时，PatternLockView将只使用lock_nodeSize，而无视lock_spacing与lock_padding去布局。
  * 其会将空间等分为n * n个空间，并将节点居中放置
+ * <p>
+ * If lock_flatMode is true, nodes are not added as child views. Node states are kept in arrays and
+ * each node's drawable is drawn directly in {@link #onDraw(Canvas)}.
+ * <p>
+ * 如果设置lock_flatMode为true，节点不再作为子View添加，节点状态保存在数组中，并在onDraw中直接绘制节点图片。
  *
  * @author xyxyLiu
  * @version 1.0
@@ -71,45 +86,95 @@ public class PatternLockView extends ViewGroup {
 
     private static final long DEFAULT_REPLAY_INTERVAL = 500L;
 
+    private static final int NO_NODE = PatternLayout.NO_NODE;
+
+    // delivers the results of the async verifications, shared by all the lock views
+    private static Handler sMainHandler;
+
     // attributes that can be configured with code (non-persistent)
     private boolean mIsTouchEnabled = true;
     private long mFinishTimeout = 1000;
     private boolean mIsFinishInterruptable = true;
     private boolean mIsAutoLink;
-
-    private List<NodeView> mNodeList = new ArrayList<>();
-    private NodeView currentNode;
+    private boolean mIsContinuousTouch;
+
+    // selected node ids in order
+    private int[] mNodeList;
+    private int mNodeCount;
+    // bit set of the selected node ids
+    private long[] mVisitedNodes;
+    private int currentNode = NO_NODE;
     private float mPositionX;
     private float mPositionY;
+    // end of the line from currentNode, the touch position or the predicted one, only used for drawing
+    private float mTrailingX;
+    private float mTrailingY;
+    // predicts the finger position to draw the trailing line to, null if prediction is disabled
+    private TouchPredictor mTouchPredictor;
+    private long mTouchPredictionTime;
+    private final float[] mPredictedPoint = new float[2];
+    // reusable buffer for the nodes hit by one segment of the finger path
+    private int[] mPathHitNodes;
+    // bounds of the line from currentNode to the touch position when it was last invalidated
+    private final Rect mTrailingLineBounds = new Rect();
+    private final Rect mDirtyRect = new Rect();
 
     private Drawable mNodeSrc;
     private Drawable mNodeHighlightSrc;
     private Drawable mNodeCorrectSrc;
     private Drawable mNodeErrorSrc;
+    private Drawable mNodePendingSrc;
 
-    private int mSize;
+    private int mRowCount;
+    private int mColumnCount;
     private int mTotalSize;
+    private PatternGrid mGrid;
+    // reusable buffer for the mid nodes of auto link
+    private int[] mMidNodes;
+    // measure, layout and hit testing of the nodes
+    private final PatternLayout mLayout = new PatternLayout();
+
+    // whether nodes are drawn directly by this view instead of NodeView children
+    private boolean mIsFlatMode;
+    // node states, indexed by node id
+    private int[] mNodeStates;
+    // node highlight animations, only used in flat mode
+    private Animation[] mNodeAnims;
+    private Transformation mNodeTransformation;
+    private RectF mNodeAnimRegion;
+
+    // whether nodes are drawn from a bitmap with all the state drawables pre-rendered at the node size
+    private boolean mIsNodeAtlas;
+    private Bitmap mNodeAtlas;
+    private int mNodeAtlasSize;
+    // cell index in the atlas of each node state, -1 if the state has no drawable
+    private final int[] mNodeAtlasCells = new int[NodeView.STATE_COUNT];
+    private Paint mNodeAtlasPaint;
+    private Rect mNodeAtlasSrc;
+    private Rect mNodeAtlasDst;
 
-    private float mNodeAreaExpand;
     private int mNodeOnAnim;
+    // prototype of the node highlight animator if lock_nodeOnAnim is an animator resource, cloned for each node
+    private Animator mNodeOnAnimator;
     private float mLineWidth;
 
     private int mLineColor;
     private int mLineCorrectColor;
     private int mLineErrorColor;
+    private int mLinePendingColor;
+    // whether the link line uses round joins and caps
+    private boolean mIsLineRound;
 
-    private float mNodeSize;
-    // only used in Identical-Area mode, whether to keep each square
-    private boolean mIsSquareArea = true;
-    private float mPadding;
-    private float mSpacing;
-    private float mMeasuredPadding;
-    private float mMeasuredSpacing;
+    // committed link line segments [startX, startY, endX, endY] for Canvas.drawLines()
+    private float[] mLineSegments;
+    private int mLineSegmentsCount;
+    // committed link line as a polyline, only used if mIsLineRound is true
+    private Path mLinePath;
 
 
-    private Vibrator mVibrator;
     private boolean mEnableVibrate;
-    private int mVibrateTime;
+    // sends the vibration of the linked nodes, null if vibration is disabled
+    private HapticEngine mHapticEngine;
 
     private boolean mIsPatternVisible = true;
 
@@ -117,9 +182,36 @@ public class PatternLockView extends ViewGroup {
 
     private CallBack mCallBack;
 
+    private AsyncCallBack mAsyncCallBack;
+    // the verification waiting for its result, touch events are ignored until it's done.
+    // volatile since Verification#isCancelled() reads it in any thread
+    private volatile Verification mPendingVerification;
+
     private OnNodeTouchListener mOnNodeTouchListener;
 
-    private ShowAnimThread mShowAnimThread;
+    private OnNodesTouchListener mOnNodesTouchListener;
+    // index in mNodeList of the first node not delivered to mOnNodesTouchListener yet, -1 if none is pending
+    private int mPendingTouchStart = -1;
+    private final Runnable mNodesTouchAction = new Runnable() {
+        @Override
+        public void run() {
+            deliverNodesTouched();
+        }
+    };
+
+    private OnGestureMetricsListener mOnGestureMetricsListener;
+    // metrics of the current gesture, only allocated if the listener is set
+    private GestureMetrics mMetrics;
+    private boolean mIsGestureMeasuring;
+    // event time of the touch sample being processed
+    private long mTouchSampleTime;
+
+    private GestureRecorder mRecorder;
+
+    private final PasswordPlayer mPasswordPlayer = new PasswordPlayer();
+
+    // node views removed by a resize, reused when the size grows again
+    private final ArrayList<NodeView> mRecycledNodes = new ArrayList<>();
 
     private Runnable mFinishAction = new Runnable() {
         @Override
@@ -152,10 +244,77 @@ public class PatternLockView extends ViewGroup {
         this.mCallBack = callBack;
     }
 
+    /**
+     * set a callback which verifies the password asynchronously.
+     * if it's set, {@link CallBack} set by {@link #setCallBack(CallBack)} is not called.
+     *
+     * @param callBack callback
+     */
+    public void setAsyncCallBack(AsyncCallBack callBack) {
+        this.mAsyncCallBack = callBack;
+    }
+
+    /**
+     * check if the lock view is waiting for the result of an {@link AsyncCallBack}
+     * @return pending
+     */
+    public boolean isVerificationPending() {
+        return mPendingVerification != null;
+    }
+
     public void setOnNodeTouchListener(OnNodeTouchListener callBack) {
         this.mOnNodeTouchListener = callBack;
     }
 
+    /**
+     * set a listener which receives the nodes touched by the user in batches, once per frame.
+     * it can be used together with {@link OnNodeTouchListener}.
+     *
+     * @param listener listener, or null to remove it
+     */
+    public void setOnNodesTouchListener(OnNodesTouchListener listener) {
+        if (listener == null && mPendingTouchStart >= 0) {
+            removeCallbacks(mNodesTouchAction);
+            mPendingTouchStart = -1;
+        }
+        mOnNodesTouchListener = listener;
+    }
+
+    /**
+     * set a listener to receive the performance metrics of each gesture.
+     * metrics are only collected while the listener is set.
+     *
+     * @param listener listener, or null to stop collecting
+     */
+    public void setOnGestureMetricsListener(OnGestureMetricsListener listener) {
+        mOnGestureMetricsListener = listener;
+        mIsGestureMeasuring = false;
+        mMetrics = listener != null ? new GestureMetrics(mTotalSize, getFrameBudgetNanos()) : null;
+    }
+
+    /**
+     * set a recorder to record the touch samples, node commits and finish results of the user's gestures.
+     * recording does not allocate, drain the recorder on any thread.
+     *
+     * @param recorder recorder, or null to stop recording
+     */
+    public void setGestureRecorder(GestureRecorder recorder) {
+        mRecorder = recorder;
+    }
+
+    public GestureRecorder getGestureRecorder() {
+        return mRecorder;
+    }
+
+    private long getFrameBudgetNanos() {
+        float refreshRate = 60f;
+        WindowManager windowManager = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+        if (windowManager != null && windowManager.getDefaultDisplay().getRefreshRate() > 0) {
+            refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        }
+        return (long) (1000000000L / refreshRate);
+    }
+
     public void setTouchEnabled(boolean isEnabled) {
         mIsTouchEnabled = isEnabled;
     }
@@ -200,10 +359,118 @@ public class PatternLockView extends ViewGroup {
         mIsAutoLink = isEnabled;
     }
 
+    /**
+     * whether to check the whole finger path, including the batched historical touch points,
+     * so that a fast swipe never skips the nodes it passes through
+     *
+     * @param isEnabled enabled
+     */
+    public void setContinuousTouchEnabled(boolean isEnabled) {
+        mIsContinuousTouch = isEnabled;
+    }
+
+    /**
+     * draw the line from the last node to where the finger is predicted to be after the given time,
+     * instead of the last touch position, to hide the input latency. nodes are only linked by real touch samples.
+     *
+     * @param millis prediction time, 0 to disable the prediction
+     */
+    public void setTouchPredictionTime(long millis) {
+        mTouchPredictionTime = millis;
+        if (millis > 0) {
+            if (mTouchPredictor == null) {
+                mTouchPredictor = new TouchPredictor();
+            }
+        } else {
+            mTouchPredictor = null;
+        }
+    }
+
+    /**
+     * set a size * size grid
+     *
+     * @param size count of rows and columns
+     */
     public void setSize(int size) {
-        mSize = size;
-        mTotalSize = size * size;
+        setSize(size, size);
+    }
+
+    /**
+     * set a rows * columns grid. flat mode is recommended for large grids, e.g. more than 100 nodes.
+     *
+     * @param rowCount    count of rows
+     * @param columnCount count of columns
+     */
+    public void setSize(int rowCount, int columnCount) {
+        stopPasswordAnim();
+        mGrid = new PatternGrid(rowCount, columnCount);
+        mLayout.setGrid(mGrid);
+        mRowCount = rowCount;
+        mColumnCount = columnCount;
+        mTotalSize = mGrid.getTotalSize();
+        mMidNodes = new int[mGrid.getMaxMidNodeCount()];
+        setupNodes(mTotalSize);
+        reset();
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public int getColumnCount() {
+        return mColumnCount;
+    }
+
+    /**
+     * whether the touch area of each node is a circle with radius (nodeSize / 2 + lock_nodeTouchExpand)
+     * instead of a square
+     *
+     * @param isCircle circle touch area
+     */
+    public void setNodeTouchCircle(boolean isCircle) {
+        mLayout.setNodeTouchCircle(isCircle);
+    }
+
+    public boolean isNodeAtlasEnabled() {
+        return mIsNodeAtlas;
+    }
+
+    /**
+     * whether nodes are drawn from a bitmap atlas, where each state drawable is rendered once at the measured
+     * node size, instead of drawing the state drawables (or swapping the background drawables of node views).
+     *
+     * @param isEnabled enabled
+     */
+    public void setNodeAtlasEnabled(boolean isEnabled) {
+        if (mIsNodeAtlas == isEnabled) {
+            return;
+        }
+        mIsNodeAtlas = isEnabled;
+        mNodeAtlas = null;
+        for (int i = 0; i < getChildCount(); i++) {
+            ((NodeView) getChildAt(i)).updateBackground();
+        }
+        invalidate();
+    }
+
+    public boolean isFlatMode() {
+        return mIsFlatMode;
+    }
+
+    /**
+     * whether nodes are drawn directly by the lock view instead of being added as child views.
+     * flat mode saves the cost of n * n child views, especially for large sizes.
+     *
+     * @param isFlatMode flat mode
+     */
+    public void setFlatMode(boolean isFlatMode) {
+        if (mIsFlatMode == isFlatMode) {
+            return;
+        }
+        stopPasswordAnim();
+        mIsFlatMode = isFlatMode;
         setupNodes(mTotalSize);
+        reset();
     }
 
     /**
@@ -213,20 +480,61 @@ public class PatternLockView extends ViewGroup {
         if (mFinishAction != null) {
             removeCallbacks(mFinishAction);
         }
+        if (mHapticEngine != null) {
+            mHapticEngine.cancel();
+        }
 
-        mNodeList.clear();
-        currentNode = null;
+        if (mPendingTouchStart >= 0) {
+            // deliver the touched nodes before they are cleared
+            removeCallbacks(mNodesTouchAction);
+            deliverNodesTouched();
+        }
+        mNodeCount = 0;
+        Arrays.fill(mVisitedNodes, 0L);
+        // a result arriving after reset will be ignored
+        mPendingVerification = null;
+        currentNode = NO_NODE;
+        mTrailingLineBounds.setEmpty();
+
+        for (int n = 0; n < mTotalSize; n++) {
+            setNodeState(n, NodeView.STATE_NORMAL, false);
+        }
 
-        for (int n = 0; n < getChildCount(); n++) {
-            NodeView node = (NodeView) getChildAt(n);
-            node.setState(NodeView.STATE_NORMAL);
+        mLineSegmentsCount = 0;
+        if (mLinePath != null) {
+            mLinePath.rewind();
         }
 
+        setupPaint();
+
+        invalidate();
+    }
+
+    private void setupPaint() {
         mPaint.setStyle(Style.STROKE);
         mPaint.setStrokeWidth(mLineWidth);
         mPaint.setColor(mLineColor);
         mPaint.setAntiAlias(true);
+        mPaint.setStrokeJoin(mIsLineRound ? Paint.Join.ROUND : Paint.Join.MITER);
+        mPaint.setStrokeCap(mIsLineRound ? Paint.Cap.ROUND : Paint.Cap.BUTT);
+    }
 
+    /**
+     * whether the link line is drawn as one polyline with round joins and caps
+     *
+     * @param isRound round line
+     */
+    public void setLineRound(boolean isRound) {
+        if (mIsLineRound == isRound) {
+            return;
+        }
+        mIsLineRound = isRound;
+        if (mIsLineRound && mLinePath == null) {
+            mLinePath = new Path();
+        }
+        mPaint.setStrokeJoin(mIsLineRound ? Paint.Join.ROUND : Paint.Join.MITER);
+        mPaint.setStrokeCap(mIsLineRound ? Paint.Cap.ROUND : Paint.Cap.BUTT);
+        rebuildLine();
         invalidate();
     }
 
@@ -235,13 +543,22 @@ public class PatternLockView extends ViewGroup {
      * @param password password
      */
     public void showPassword(List<Integer> password) {
-        ensureValidPassword(password);
+        mGrid.ensureValidPassword(password);
+        showPassword(toIdArray(password));
+    }
+
+    /**
+     * show pattern with a giving password
+     * @param password node ids of the password
+     */
+    public void showPassword(int[] password) {
+        mGrid.ensureValidPassword(password);
         stopPasswordAnim();
         reset();
-        for (int i = 0; i < password.size(); ++i) {
-            NodeView curNode = (PatternLockView.NodeView) getChildAt(password.get(i));
-            curNode.setState(NodeView.STATE_HIGHLIGHT, false);
-            addNodeToList(curNode, false);
+        for (int i = 0; i < password.length; ++i) {
+            int nodeId = password[i];
+            setNodeState(nodeId, NodeView.STATE_HIGHLIGHT, false);
+            addNodeToList(nodeId, false);
         }
         invalidate();
     }
@@ -283,23 +600,70 @@ public class PatternLockView extends ViewGroup {
      */
     public void showPasswordWithAnim(List<Integer> password, int repeatTime, long interval,
                                      onAnimFinishListener listenner) {
-        ensureValidPassword(password);
+        mGrid.ensureValidPassword(password);
+        showPasswordWithAnim(toIdArray(password), repeatTime, interval, listenner);
+    }
+
+    /**
+     * show pattern animation repeatedly with a giving password
+     * @param password node ids of the password
+     */
+    public void showPasswordWithAnim(int[] password) {
+        showPasswordWithAnim(password, -1, DEFAULT_REPLAY_INTERVAL, null);
+    }
+
+    /**
+     * show pattern animation n times with a giving password, and listen finish callback
+     * @param password node ids of the password
+     * @param repeatTime n, -1 means infinitely
+     * @param interval time interval in node highlight
+     * @param listenner finish listener
+     */
+    public void showPasswordWithAnim(int[] password, int repeatTime, long interval,
+                                     onAnimFinishListener listenner) {
+        mGrid.ensureValidPassword(password);
         stopPasswordAnim();
         reset();
         setTouchEnabled(false);
-        mShowAnimThread = new ShowAnimThread(this, password);
-        mShowAnimThread.setRepeatTime(repeatTime)
-                .setOnFinishListenner(listenner)
-                .setInterval(interval)
-                .start();
+        mPasswordPlayer.start(password, repeatTime, interval, listenner);
     }
 
     /**
-     * check if pattern animation is running
+     * check if pattern animation is running (including paused)
      * @return running
      */
     public boolean isPasswordAnim() {
-        return mShowAnimThread != null ? mShowAnimThread.isRunning() : false;
+        return mPasswordPlayer.isRunning();
+    }
+
+    /**
+     * check if pattern animation is paused
+     * @return paused
+     */
+    public boolean isPasswordAnimPaused() {
+        return mPasswordPlayer.isPaused();
+    }
+
+    /**
+     * pause pattern animation, the nodes already shown are kept.
+     */
+    public void pausePasswordAnim() {
+        mPasswordPlayer.pause();
+    }
+
+    /**
+     * resume pattern animation paused by {@link #pausePasswordAnim()}.
+     */
+    public void resumePasswordAnim() {
+        mPasswordPlayer.resume();
+    }
+
+    /**
+     * jump to the given time of pattern animation, the time of the first node of the first round is 0.
+     * @param time time in milliseconds
+     */
+    public void seekPasswordAnim(long time) {
+        mPasswordPlayer.seek(time);
     }
 
     /**
@@ -307,241 +671,198 @@ public class PatternLockView extends ViewGroup {
      * call it in {@link Activity#onDestroy()} to avoid memory leaks
      */
     public void stopPasswordAnim() {
-        if (mShowAnimThread != null) {
-            mShowAnimThread.end();
-            mShowAnimThread = null;
-        }
+        mPasswordPlayer.stop();
     }
 
-    private void ensureValidPassword(List<Integer> password) {
-        if (password == null) {
-            throw new IllegalArgumentException("password is null!");
-        }
-
-        for (Integer id : password) {
-            if (id == null) {
-                throw new IllegalArgumentException("password has null value!");
-            }
-            if (id < 0 || id >= mTotalSize) {
-                throw new IllegalArgumentException(String.format("password value is invalid: %d, valid range is "
-                        + "[%d, %d]", id, 0, mTotalSize - 1));
-            }
+    private static int[] toIdArray(List<Integer> idList) {
+        int[] ids = new int[idList.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = idList.get(i);
         }
+        return ids;
     }
 
     private void initFromAttributes(Context context, AttributeSet attrs, int defStyleAttr) {
         final TypedArray a = getContext().obtainStyledAttributes(attrs, R.styleable.PatternLockView, defStyleAttr, 0);
 
         int size = a.getInt(R.styleable.PatternLockView_lock_size, 3);
+        int rowCount = a.getInt(R.styleable.PatternLockView_lock_rows, size);
+        int columnCount = a.getInt(R.styleable.PatternLockView_lock_columns, size);
         mNodeSrc = a.getDrawable(R.styleable.PatternLockView_lock_nodeSrc);
         mNodeHighlightSrc = a.getDrawable(R.styleable.PatternLockView_lock_nodeHighlightSrc);
         mNodeCorrectSrc = a.getDrawable(R.styleable.PatternLockView_lock_nodeCorrectSrc);
         mNodeErrorSrc = a.getDrawable(R.styleable.PatternLockView_lock_nodeErrorSrc);
-        mNodeSize = a.getDimension(R.styleable.PatternLockView_lock_nodeSize, 0);
-        mNodeAreaExpand = a.getDimension(R.styleable.PatternLockView_lock_nodeTouchExpand, 0);
+        mNodePendingSrc = a.getDrawable(R.styleable.PatternLockView_lock_nodePendingSrc);
+        float nodeSize = a.getDimension(R.styleable.PatternLockView_lock_nodeSize, 0);
+        mLayout.setNodeSize(nodeSize);
+        mLayout.setNodeAreaExpand(a.getDimension(R.styleable.PatternLockView_lock_nodeTouchExpand, 0));
+        mLayout.setNodeTouchCircle(a.getBoolean(R.styleable.PatternLockView_lock_nodeTouchCircle, false));
         mNodeOnAnim = a.getResourceId(R.styleable.PatternLockView_lock_nodeOnAnim, 0);
+        if (mNodeOnAnim != 0 && "animator".equals(getResources().getResourceTypeName(mNodeOnAnim))) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                mNodeOnAnimator = loadAnimator(context, mNodeOnAnim);
+            } else {
+                Log.w(TAG, "lock_nodeOnAnim is an animator, which needs api 11, no animation is played!");
+            }
+            // mNodeOnAnim is only used for view animations
+            mNodeOnAnim = 0;
+        }
         mLineColor = a.getColor(R.styleable.PatternLockView_lock_lineColor, Color.argb(0xb2, 0xff, 0xff, 0xff));
         mLineCorrectColor = a.getColor(R.styleable.PatternLockView_lock_lineCorrectColor, mLineColor);
         mLineErrorColor = a.getColor(R.styleable.PatternLockView_lock_lineErrorColor, mLineColor);
+        mLinePendingColor = a.getColor(R.styleable.PatternLockView_lock_linePendingColor, mLineColor);
         mLineWidth = a.getDimension(R.styleable.PatternLockView_lock_lineWidth, (int) TypedValue.applyDimension(
                 TypedValue.COMPLEX_UNIT_DIP, 5, getResources().getDisplayMetrics()));
-        mPadding = a.getDimension(R.styleable.PatternLockView_lock_padding, 0);
-        mSpacing = a.getDimension(R.styleable.PatternLockView_lock_spacing, -1);
+        mLayout.setPadding(a.getDimension(R.styleable.PatternLockView_lock_padding, 0));
+        mLayout.setSpacing(a.getDimension(R.styleable.PatternLockView_lock_spacing, -1));
         mIsAutoLink = a.getBoolean(R.styleable.PatternLockView_lock_autoLink, false);
+        mIsFlatMode = a.getBoolean(R.styleable.PatternLockView_lock_flatMode, false);
+        mIsNodeAtlas = a.getBoolean(R.styleable.PatternLockView_lock_nodeAtlas, false);
+        mIsContinuousTouch = a.getBoolean(R.styleable.PatternLockView_lock_continuousTouch, false);
+        setTouchPredictionTime(a.getInt(R.styleable.PatternLockView_lock_touchPredictionTime, 0));
+        mIsLineRound = a.getBoolean(R.styleable.PatternLockView_lock_lineRound, false);
 
         mEnableVibrate = a.getBoolean(R.styleable.PatternLockView_lock_enableVibrate, false);
-        mVibrateTime = a.getInt(R.styleable.PatternLockView_lock_vibrateTime, 20);
+        int vibrateTime = a.getInt(R.styleable.PatternLockView_lock_vibrateTime, 20);
+        int hapticFeedback = a.getInt(R.styleable.PatternLockView_lock_hapticFeedback,
+                HapticEngine.NO_FEEDBACK_CONSTANT);
 
         a.recycle();
 
-        if (mNodeSize <= 0) {
+        if (nodeSize <= 0) {
             throw new IllegalStateException("nodeSize must be provided and larger than zero!");
         }
 
         if (mEnableVibrate) {
-            mVibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+            Vibrator vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+            mHapticEngine = new HapticEngine(this, vibrator, vibrateTime, hapticFeedback);
+        }
+
+        if (mIsLineRound) {
+            mLinePath = new Path();
         }
 
         mPaint = new Paint(Paint.DITHER_FLAG);
-        mPaint.setStyle(Style.STROKE);
-        mPaint.setStrokeWidth(mLineWidth);
-        mPaint.setColor(mLineColor);
-        mPaint.setAntiAlias(true);
+        setupPaint();
 
-        setSize(size);
+        setSize(rowCount, columnCount);
 
         setWillNotDraw(false);
     }
 
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Animator loadAnimator(Context context, int id) {
+        return AnimatorInflater.loadAnimator(context, id);
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        boolean needRemeasure = false;
-        int widthMode = MeasureSpec.getMode(widthMeasureSpec);
-        int heightMode = MeasureSpec.getMode(heightMeasureSpec);
         int width = MeasureSpec.getSize(widthMeasureSpec);
         int height = MeasureSpec.getSize(heightMeasureSpec);
-        int gaps = mSize - 1;
-        float nodesize = mNodeSize;
-        mMeasuredPadding = mPadding;
-        mMeasuredSpacing = mSpacing;
-        float maxNodeWidth, maxNodeHeight, maxNodeSize;
 
-        if (DEBUG) {
+        boolean measured = mLayout.measure(width, isMeasureModeExactly(MeasureSpec.getMode(widthMeasureSpec)),
+                height, isMeasureModeExactly(MeasureSpec.getMode(heightMeasureSpec)));
+        int nodeSize = mLayout.getMeasuredNodeSize();
+
+        if (DEBUG && measured) {
             Log.v(TAG, String.format("onMeasure(), raw width = %d, height = %d)", width, height));
+            Log.v(TAG, String.format("measured nodeSize = %d, padding = %f, spacing = %f)",
+                    nodeSize, mLayout.getMeasuredPadding(), mLayout.getMeasuredSpacing()));
         }
 
-        // Spacing&Padding mode:
-        if (mSpacing >= 0) {
-            maxNodeWidth = ((width - mPadding * 2 - mSpacing * gaps) / mSize);
-            maxNodeHeight = ((height - mPadding * 2 - mSpacing * gaps) / mSize);
-            maxNodeSize = maxNodeWidth < maxNodeHeight ? maxNodeWidth : maxNodeHeight;
-            if (DEBUG) {
-                Log.v(TAG, String.format("maxNodeWidth = %f, maxNodeHeight = %f, maxNodeSize = %f)",
-                        maxNodeWidth, maxNodeHeight, maxNodeSize));
-            }
-
-            // if maximum available nodesize if smaller than desired nodesize with paddings & spacing unchanged
-            if (nodesize > maxNodeSize) {
-                int xRemains = (int) (width - mSize * nodesize);
-                int yRemains = (int) (height - mSize * nodesize);
-                int minRemains = xRemains < yRemains ? xRemains : yRemains;
-                int paddingsAndSpacings = (int) (mPadding * 2 + mSpacing * gaps);
-
-                if (DEBUG) {
-                    Log.d(TAG, String.format("xRemains = %d, yRemains = %d, before shrink: mPadding = %f, mSpacing = %f",
-                            xRemains, yRemains, mPadding, mSpacing));
-                }
-                // keep nodesize & shrink paddings and spacing if there are enough space
-                if (minRemains > 0 && paddingsAndSpacings > 0) {
-                    float shrinkRatio = (float) minRemains / paddingsAndSpacings;
-                    mMeasuredPadding *= shrinkRatio;
-                    mMeasuredSpacing *= shrinkRatio;
-                    if (DEBUG) {
-                        Log.d(TAG, String.format("shrinkRatio = %f, mMeasuredPadding = %f, mMeasuredSpacing = %f",
-                                shrinkRatio, mMeasuredPadding, mMeasuredSpacing));
-                    }
-                } else { // otherwise shrink nodesize & keep paddings and spacing
-                    nodesize = maxNodeSize;
-                }
-            } else {
-                if (!isMeasureModeExactly(widthMode)) {
-                    width = (int) (mPadding * 2 + mSpacing * gaps + mSize * nodesize);
-                }
+        setMeasuredDimension(mLayout.getMeasuredWidth(), mLayout.getMeasuredHeight());
 
-                if (!isMeasureModeExactly(heightMode)) {
-                    height = (int) (mPadding * 2 + mSpacing * gaps + mSize * nodesize);
-                }
+        int widthSpec = MeasureSpec.makeMeasureSpec(nodeSize, MeasureSpec.EXACTLY);
+        int heightSpec = MeasureSpec.makeMeasureSpec(nodeSize, MeasureSpec.EXACTLY);
+        for (int i = 0; i < getChildCount(); i++) {
+            View v = getChildAt(i);
+            // skip the nodes already measured with the same size
+            if (v.isLayoutRequested() || v.getMeasuredWidth() != nodeSize || v.getMeasuredHeight() != nodeSize) {
+                v.measure(widthSpec, heightSpec);
             }
+        }
+    }
 
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        boolean boundsChanged = mLayout.layout(right - left, bottom - top);
 
-            // if result nodesize is smaller than zero, remeasure without using spacings.
-            if (nodesize <= 0) {
-                needRemeasure = true;
-                // remeasure without using mSpacing
-                if (DEBUG) {
-                    Log.v(TAG, String.format("remeasure without using mSpacing"));
+        if (!mIsFlatMode) {
+            for (int n = 0; n < mTotalSize; n++) {
+                View v = getChildAt(n);
+                int l = mLayout.getNodeLeft(n);
+                int t = mLayout.getNodeTop(n);
+                int r = mLayout.getNodeRight(n);
+                int b = mLayout.getNodeBottom(n);
+                // skip the nodes already laid out at the same position
+                if (v.isLayoutRequested() || v.getLeft() != l || v.getTop() != t
+                        || v.getRight() != r || v.getBottom() != b) {
+                    v.layout(l, t, r, b);
                 }
             }
         }
 
-        // Identical-Area mode:
-        // if no spacing is provided, divide the whole area into 9 identical area for each node
-        if (needRemeasure || mSpacing < 0) {
-            mMeasuredSpacing = -1;
-            nodesize = mNodeSize;
-            maxNodeWidth = width / mSize;
-            maxNodeHeight = height / mSize;
-            maxNodeSize = maxNodeWidth < maxNodeHeight ? maxNodeWidth : maxNodeHeight;
-            if (DEBUG) {
-                Log.v(TAG, String.format("maxNodeWidth = %f, maxNodeHeight = %f, maxNodeSize = %f)",
-                        maxNodeWidth, maxNodeHeight, maxNodeSize));
-            }
+        if (boundsChanged) {
+            rebuildLine();
+        }
+    }
 
-            // if maximum available nodesize if smaller than desired nodesize
-            if (nodesize > maxNodeSize) {
-                nodesize = maxNodeSize;
-            }
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // a pulse left in the run queue of a detached view would block all the later ones
+        if (mHapticEngine != null) {
+            mHapticEngine.cancel();
         }
+    }
 
-        if (DEBUG) {
-            Log.v(TAG, String.format("measured nodeSize = %f)", nodesize));
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mRecorder != null) {
+            recordTouchEvent(mRecorder, event);
+        }
+        if (mMetrics == null) {
+            return handleTouchEvent(event);
         }
 
-        if (width > height && !isMeasureModeExactly(widthMode)) {
-            width = height;
-        } else if (width < height && !isMeasureModeExactly(heightMode)) {
-            height = width;
+        GestureMetrics metrics = mMetrics;
+        int action = event.getAction();
+        if (action == MotionEvent.ACTION_DOWN) {
+            metrics.begin(event.getEventTime());
+            mIsGestureMeasuring = true;
+        } else if (!mIsGestureMeasuring) {
+            return handleTouchEvent(event);
         }
 
-        setMeasuredDimension(width, height);
+        int invalidateCount = metrics.mInvalidateCount;
+        long start = System.nanoTime();
+        boolean result = handleTouchEvent(event);
+        metrics.mTouchTimeNanos += System.nanoTime() - start;
+        metrics.mTouchEventCount++;
+        if (metrics.mInvalidateCount != invalidateCount) {
+            metrics.onFrameRequested(start);
+        }
 
-        for (int i = 0; i < getChildCount(); i++) {
-            View v = getChildAt(i);
-            int widthSpec = MeasureSpec.makeMeasureSpec((int) nodesize, MeasureSpec.EXACTLY);
-            int heightSpec = MeasureSpec.makeMeasureSpec((int) nodesize, MeasureSpec.EXACTLY);
-            v.measure(widthSpec, heightSpec);
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            metrics.mEndTime = event.getEventTime();
+            mIsGestureMeasuring = false;
+            mOnGestureMetricsListener.onGestureMetrics(metrics);
         }
+        return result;
     }
 
-    @Override
-    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        int gaps = mSize - 1;
-        int height = bottom - top;
-        int width = right - left;
-        float nodeSize = getChildAt(0).getMeasuredWidth();
-
-        // Identical-Area mode:
-        if (mMeasuredSpacing < 0) {
-            float areaWidth = width / mSize;
-            float areaHeight = height / mSize;
-            float areaSize = areaWidth < areaHeight ? areaWidth : areaHeight;
-            float widthPadding = 0f;
-            float heightPadding = 0f;
-            // whether to keep each cell as square (width = height)
-            if (mIsSquareArea) {
-                areaWidth = areaSize;
-                areaHeight = areaSize;
-                widthPadding = (width - mSize * areaSize) / 2;
-                heightPadding = (height - mSize * areaSize) / 2;
-            }
-            if (DEBUG) {
-                Log.v(TAG, String.format("nodeSize = %f, areaWidth = %f, areaHeight = %f, widthPadding = %f, heightPadding = %f",
-                        nodeSize, areaWidth, areaHeight, widthPadding, heightPadding));
-            }
-
-            for (int n = 0; n < mTotalSize; n++) {
-                NodeView node = (NodeView) getChildAt(n);
-                int row = n / mSize;
-                int col = n % mSize;
-                int l = (int) (widthPadding + col * areaWidth + (areaWidth - node.getMeasuredWidth()) / 2);
-                int t = (int) (heightPadding + row * areaHeight + (areaHeight - node.getMeasuredHeight()) / 2);
-                int r = (int) (l + node.getMeasuredWidth());
-                int b = (int) (t + node.getMeasuredHeight());
-                node.layout(l, t, r, b);
-            }
-        } else { // Spacing&Padding mode:
-            float widthPadding = (width - mSize * nodeSize - mMeasuredSpacing * gaps) / 2;
-            float heightPadding = (height - mSize * nodeSize - mMeasuredSpacing * gaps) / 2;
-            if (DEBUG) {
-                Log.v(TAG, String.format("nodeSize = %f, widthPadding = %f, heightPadding = %f",
-                        nodeSize, widthPadding, heightPadding));
-            }
-            for (int n = 0; n < mTotalSize; n++) {
-                NodeView node = (NodeView) getChildAt(n);
-                int row = n / mSize;
-                int col = n % mSize;
-                int l = (int) (widthPadding + col * (nodeSize + mMeasuredSpacing));
-                int t = (int) (heightPadding + row * (nodeSize + mMeasuredSpacing));
-                int r = (int) (l + nodeSize);
-                int b = (int) (t + nodeSize);
-                node.layout(l, t, r, b);
-            }
+    private static void recordTouchEvent(GestureRecorder recorder, MotionEvent event) {
+        int action = event.getAction() & MotionEvent.ACTION_MASK;
+        final int historySize = event.getHistorySize();
+        for (int h = 0; h < historySize; h++) {
+            recorder.recordTouch(event.getHistoricalEventTime(h), action, event.getHistoricalX(h),
+                    event.getHistoricalY(h));
         }
+        recorder.recordTouch(event.getEventTime(), action, event.getX(), event.getY());
     }
 
-    @Override
-    public boolean onTouchEvent(MotionEvent event) {
-        if (!mIsTouchEnabled || !isEnabled()) {
+    private boolean handleTouchEvent(MotionEvent event) {
+        if (!mIsTouchEnabled || !isEnabled() || mPendingVerification != null) {
             return true;
         }
 
@@ -552,193 +873,647 @@ public class PatternLockView extends ViewGroup {
                     mFinishAction.run();
                 }
             case MotionEvent.ACTION_MOVE:
-                mPositionX = event.getX();
-                mPositionY = event.getY();
-                NodeView nodeAt = getNodeAt(mPositionX, mPositionY);
-
-                if (currentNode == null) {
-                    if (nodeAt != null) {
-                        currentNode = nodeAt;
-                        currentNode.setState(NodeView.STATE_HIGHLIGHT);
-                        addNodeToList(currentNode, true);
-                        tryVibrate();
-                        invalidate();
+                if (mIsContinuousTouch && event.getAction() == MotionEvent.ACTION_MOVE) {
+                    // walk through the whole finger path, including the batched historical points
+                    final int historySize = event.getHistorySize();
+                    for (int h = 0; h < historySize; h++) {
+                        mTouchSampleTime = event.getHistoricalEventTime(h);
+                        touchPathTo(event.getHistoricalX(h), event.getHistoricalY(h));
+                    }
+                    mTouchSampleTime = event.getEventTime();
+                    if (mIsGestureMeasuring) {
+                        mMetrics.mTouchSampleCount += historySize + 1;
                     }
+                    touchPathTo(event.getX(), event.getY());
                 } else {
-                    if (nodeAt != null && !nodeAt.isHighLighted()) {
-                        if (mIsAutoLink) {
-                            autoLinkNode(currentNode, nodeAt);
-                        }
-                        currentNode = nodeAt;
-                        currentNode.setState(NodeView.STATE_HIGHLIGHT);
-                        addNodeToList(currentNode, true);
-                        tryVibrate();
+                    mTouchSampleTime = event.getEventTime();
+                    if (mIsGestureMeasuring) {
+                        mMetrics.mTouchSampleCount++;
                     }
-                    invalidate();
+                    mPositionX = event.getX();
+                    mPositionY = event.getY();
+                    touchNode(mLayout.getNodeAt(mPositionX, mPositionY));
                 }
+
+                updateTrailingPoint(event);
+                invalidateTrailingLine();
                 break;
             case MotionEvent.ACTION_UP:
-                if (mNodeList.size() > 0) {
+                if (mNodeCount > 0) {
 
                     if (!mIsFinishInterruptable) {
                         setTouchEnabled(false);
                     }
 
-                    if (mCallBack != null) {
-                        int result = mCallBack.onFinish(Password.buildPassword(mNodeList));
-                        setFinishState(result);
+                    Password password = null;
+                    if (mAsyncCallBack != null || mCallBack != null) {
+                        password = Password.buildPassword(mNodeList, mNodeCount);
                     }
 
-                    currentNode = null;
+                    currentNode = NO_NODE;
+                    mTrailingLineBounds.setEmpty();
                     invalidate();
-                    postDelayed(mFinishAction, mFinishTimeout);
 
+                    if (mAsyncCallBack != null) {
+                        // finish timeout starts after the result is set
+                        Verification verification = new Verification();
+                        mPendingVerification = verification;
+                        setFinishState(NodeView.STATE_PENDING, mLinePendingColor);
+                        long callBackStart = mIsGestureMeasuring ? System.nanoTime() : 0;
+                        mAsyncCallBack.onFinish(password, verification);
+                        if (mIsGestureMeasuring) {
+                            mMetrics.mCallBackTimeNanos += System.nanoTime() - callBackStart;
+                        }
+                    } else {
+                        if (mCallBack != null) {
+                            long callBackStart = mIsGestureMeasuring ? System.nanoTime() : 0;
+                            int result = mCallBack.onFinish(password);
+                            if (mIsGestureMeasuring) {
+                                mMetrics.mCallBackTimeNanos += System.nanoTime() - callBackStart;
+                            }
+                            setFinishState(result);
+                            if (mRecorder != null) {
+                                mRecorder.recordFinish(event.getEventTime(), result);
+                            }
+                        }
+                        postDelayed(mFinishAction, mFinishTimeout);
+                    }
                 }
                 break;
         }
         return true;
     }
 
-    @SuppressLint("MissingPermission")
-    private void tryVibrate() {
-        if (mEnableVibrate) {
-            try {
-                mVibrator.vibrate(mVibrateTime);
-            } catch (Throwable e) {
-                e.printStackTrace();
-            }
+    private void touchNode(int nodeAt) {
+        if (nodeAt == NO_NODE) {
+            return;
         }
-    }
 
-    private void setupNodes(int totalSize) {
-        removeAllViews();
-        for (int n = 0; n < totalSize; n++) {
-            NodeView node = new NodeView(getContext(), n);
-            addView(node);
+        if (currentNode == NO_NODE) {
+            currentNode = nodeAt;
+            setNodeState(currentNode, NodeView.STATE_HIGHLIGHT, true);
+            addNodeToList(currentNode, true);
+            tryVibrate();
+        } else if (!isNodeVisited(nodeAt)) {
+            if (mIsAutoLink) {
+                autoLinkNode(currentNode, nodeAt);
+            }
+            currentNode = nodeAt;
+            setNodeState(currentNode, NodeView.STATE_HIGHLIGHT, true);
+            addNodeToList(currentNode, true);
+            tryVibrate();
         }
     }
 
-    private void setFinishState(int result) {
-        int nodeState = -1;
-        int lineColor = mLineColor;
-
-        if (result == CODE_PASSWORD_CORRECT) {
-            nodeState = NodeView.STATE_CORRECT;
-            lineColor = mLineCorrectColor;
-        } else if (result == CODE_PASSWORD_ERROR) {
-            nodeState = NodeView.STATE_ERROR;
-            lineColor = mLineErrorColor;
+    /**
+     * move the end of the trailing line to the touch position, or the predicted position if prediction is enabled.
+     */
+    private void updateTrailingPoint(MotionEvent event) {
+        mTrailingX = mPositionX;
+        mTrailingY = mPositionY;
+        TouchPredictor predictor = mTouchPredictor;
+        if (predictor == null) {
+            return;
         }
 
-        if (nodeState >= 0) {
-            for (NodeView nodeView : mNodeList) {
-                nodeView.setState(nodeState);
-            }
+        if (event.getAction() == MotionEvent.ACTION_DOWN) {
+            predictor.reset();
         }
-
-        if (lineColor != mLineColor) {
-            mPaint.setColor(lineColor);
+        final int historySize = event.getHistorySize();
+        for (int h = 0; h < historySize; h++) {
+            predictor.addSample(event.getHistoricalEventTime(h), event.getHistoricalX(h), event.getHistoricalY(h));
+        }
+        predictor.addSample(event.getEventTime(), event.getX(), event.getY());
+        // never predict further than half a cell
+        predictor.setMaxDistance(Math.min(getWidth() / mColumnCount, getHeight() / mRowCount) / 2f);
+        if (predictor.predict(mTouchPredictionTime, mPredictedPoint)) {
+            mTrailingX = Math.max(0, Math.min(mPredictedPoint[0], getWidth()));
+            mTrailingY = Math.max(0, Math.min(mPredictedPoint[1], getHeight()));
         }
     }
 
-    private void addNodeToList(NodeView nodeView, boolean triggerTouch) {
-        mNodeList.add(nodeView);
-        if (triggerTouch && mOnNodeTouchListener != null) {
-            mOnNodeTouchListener.onNodeTouched(nodeView.getNodeId());
+    /**
+     * touch all the nodes on the path from the last touch position to (x, y) in path order.
+     */
+    private void touchPathTo(float x, float y) {
+        int hitCount = mLayout.getNodesOnPath(mPositionX, mPositionY, x, y, mPathHitNodes);
+        for (int i = 0; i < hitCount; i++) {
+            touchNode(mPathHitNodes[i]);
         }
+        mPositionX = x;
+        mPositionY = y;
     }
 
     /**
-     * auto link the nodes between first and second
-     * 检测两个节点间的中间检点是否未连接，否则按顺序连接。
-     *
-     * @param first
-     * @param second
+     * the pulses of all the nodes linked before the next frame are merged, and sent out of the touch event.
      */
-    private void autoLinkNode(NodeView first, NodeView second) {
-        int xDiff = second.getColumn() - first.getColumn();
-        int yDiff = second.getRow() - first.getRow();
-        if (DEBUG) {
-            Log.d(TAG, String.format("autoLinkNode(%s, %s), xDiff = %d, yDiff = %d", first, second, xDiff, yDiff));
-        }
-        if (yDiff == 0 && xDiff == 0) {
-            return;
-        } else if (yDiff == 0) {
-            int row = first.getRow();
-            int step = xDiff > 0 ? 1 : -1;
-            int column = first.getColumn();
-            while ((column += step) != second.getColumn()) {
-                tryAppendMidNode(row, column);
+    private void tryVibrate() {
+        if (mEnableVibrate) {
+            mHapticEngine.requestPulse();
+        }
+    }
+
+    private void setupNodes(int totalSize) {
+        mNodeStates = new int[totalSize];
+        mNodeList = new int[totalSize];
+        mNodeCount = 0;
+        mVisitedNodes = new long[(totalSize + 63) >> 6];
+        if (mMetrics != null) {
+            mMetrics.ensureCapacity(totalSize);
+        }
+        mLineSegments = new float[totalSize * 4];
+        mLineSegmentsCount = 0;
+        mPathHitNodes = new int[totalSize];
+        mNodeAnims = null;
+        if (mIsFlatMode) {
+            if (mNodeOnAnimator != null) {
+                Log.w(TAG, "lock_nodeOnAnim is an animator, which is not supported in flat mode, "
+                        + "no animation is played!");
             }
-        } else if (xDiff == 0) {
-            int column = first.getColumn();
-            int step = yDiff > 0 ? 1 : -1;
-            int row = first.getRow();
-            while ((row += step) != second.getRow()) {
-                tryAppendMidNode(row, column);
+            if (mNodeOnAnim != 0) {
+                mNodeAnims = new Animation[totalSize];
+                if (mNodeTransformation == null) {
+                    mNodeTransformation = new Transformation();
+                    mNodeAnimRegion = new RectF();
+                }
             }
+            removeAllViews();
+            mRecycledNodes.clear();
+            requestLayout();
+            invalidate();
         } else {
-            float tan = yDiff / (float) xDiff;
-            int xstep = xDiff > 0 ? 1 : -1;
-            if (DEBUG) {
-                Log.d(TAG, String.format("tan = %f, xstep = %d", tan, xstep));
+            setupNodeViews(totalSize);
+        }
+    }
+
+    /**
+     * reuse the existing node views and only add or remove the difference.
+     * removed node views are kept in {@link #mRecycledNodes} for the next resize.
+     */
+    private void setupNodeViews(int totalSize) {
+        int childCount = getChildCount();
+        if (childCount > totalSize) {
+            for (int n = totalSize; n < childCount; n++) {
+                NodeView node = (NodeView) getChildAt(n);
+                node.stopHighlightAnim();
+                mRecycledNodes.add(node);
+            }
+            removeViews(totalSize, childCount - totalSize);
+            childCount = totalSize;
+        }
+
+        // node states are reset to normal, reset the views kept
+        for (int n = 0; n < childCount; n++) {
+            ((NodeView) getChildAt(n)).reset(n);
+        }
+
+        for (int n = childCount; n < totalSize; n++) {
+            int recycledCount = mRecycledNodes.size();
+            if (recycledCount > 0) {
+                NodeView node = mRecycledNodes.remove(recycledCount - 1);
+                node.reset(n);
+                addView(node);
+            } else {
+                addView(new NodeView(getContext(), n));
             }
-            int xDelta = 0;
-            float yDelta = 0f;
-            while ((xDelta += xstep) != xDiff) {
-                yDelta = xDelta * tan;
-                int yDeltaRounded = Math.round(yDelta);
-                if (DEBUG) {
-                    Log.d(TAG, String.format("xDelta = %d, yDelta = %f", xDelta, yDelta));
+        }
+
+        // node positions depend on the size even if no view is added or removed
+        requestLayout();
+    }
+
+    private void setNodeState(int nodeId, int state, boolean anim) {
+        if (!mIsFlatMode) {
+            ((NodeView) getChildAt(nodeId)).setState(state, anim);
+            return;
+        }
+
+        if (mNodeStates[nodeId] == state) {
+            return;
+        }
+        mNodeStates[nodeId] = state;
+
+        if (mNodeAnims != null) {
+            Animation nodeAnim = mNodeAnims[nodeId];
+            if (state == NodeView.STATE_NORMAL) {
+                if (nodeAnim != null) {
+                    nodeAnim.cancel();
                 }
-                if (Math.abs(yDelta - yDeltaRounded) < 1e-6) {
-                    tryAppendMidNode(first.getRow() + yDeltaRounded, first.getColumn() + xDelta);
+            } else if (state == NodeView.STATE_HIGHLIGHT && anim) {
+                if (nodeAnim == null) {
+                    nodeAnim = AnimationUtils.loadAnimation(getContext(), mNodeOnAnim);
+                    mNodeAnims[nodeId] = nodeAnim;
                 }
+                nodeAnim.reset();
+                nodeAnim.start();
+            }
+        }
+        invalidateNode(nodeId);
+    }
+
+    private void invalidateNode(int nodeId) {
+        invalidate(mLayout.getNodeLeft(nodeId), mLayout.getNodeTop(nodeId),
+                mLayout.getNodeRight(nodeId), mLayout.getNodeBottom(nodeId));
+    }
+
+    /**
+     * invalidate the area covered by both the last and the current line from currentNode to the trailing point.
+     */
+    private void invalidateTrailingLine() {
+        if (currentNode == NO_NODE) {
+            return;
+        }
+        mDirtyRect.set(mTrailingLineBounds);
+        setLineBounds(mTrailingLineBounds, mLayout.getNodeCenterX(currentNode), mLayout.getNodeCenterY(currentNode),
+                mTrailingX, mTrailingY);
+        mDirtyRect.union(mTrailingLineBounds);
+        invalidate(mDirtyRect);
+    }
+
+    private void setLineBounds(Rect bounds, float startX, float startY, float endX, float endY) {
+        int padding = (int) Math.ceil(mLineWidth);
+        bounds.set((int) Math.floor(Math.min(startX, endX)) - padding,
+                (int) Math.floor(Math.min(startY, endY)) - padding,
+                (int) Math.ceil(Math.max(startX, endX)) + padding,
+                (int) Math.ceil(Math.max(startY, endY)) + padding);
+    }
+
+    private Drawable getNodeDrawable(int state) {
+        Drawable drawable = null;
+        if (state == NodeView.STATE_CORRECT) {
+            drawable = mNodeCorrectSrc;
+        } else if (state == NodeView.STATE_ERROR) {
+            drawable = mNodeErrorSrc;
+        } else if (state == NodeView.STATE_PENDING) {
+            drawable = mNodePendingSrc;
+        }
+        if (drawable == null && state != NodeView.STATE_NORMAL) {
+            drawable = mNodeHighlightSrc;
+        }
+        return drawable != null ? drawable : mNodeSrc;
+    }
+
+    private void setFinishState(int result) {
+        // nodes in pending state are restored to highlight state if the result is unknown
+        int nodeState = mPendingVerification != null ? NodeView.STATE_HIGHLIGHT : -1;
+        int lineColor = mLineColor;
+
+        if (result == CODE_PASSWORD_CORRECT) {
+            nodeState = NodeView.STATE_CORRECT;
+            lineColor = mLineCorrectColor;
+        } else if (result == CODE_PASSWORD_ERROR) {
+            nodeState = NodeView.STATE_ERROR;
+            lineColor = mLineErrorColor;
+        }
+
+        setFinishState(nodeState, lineColor);
+    }
+
+    private void setFinishState(int nodeState, int lineColor) {
+        if (nodeState >= 0) {
+            for (int i = 0; i < mNodeCount; i++) {
+                setNodeState(mNodeList[i], nodeState, false);
+            }
+        }
+
+        if (lineColor != mPaint.getColor()) {
+            mPaint.setColor(lineColor);
+            invalidate();
+        }
+    }
+
+    private void onVerificationResult(Verification verification, int result) {
+        if (verification != mPendingVerification) {
+            // the lock view has been reset
+            return;
+        }
+        setFinishState(result);
+        if (mRecorder != null) {
+            mRecorder.recordFinish(SystemClock.uptimeMillis(), result);
+        }
+        mPendingVerification = null;
+        postDelayed(mFinishAction, mFinishTimeout);
+    }
+
+    private void addNodeToList(int nodeId, boolean triggerTouch) {
+        int lastNode = NO_NODE;
+        if (mNodeCount > 0) {
+            lastNode = mNodeList[mNodeCount - 1];
+            setLineBounds(mDirtyRect, mLayout.getNodeCenterX(lastNode), mLayout.getNodeCenterY(lastNode),
+                    mLayout.getNodeCenterX(nodeId), mLayout.getNodeCenterY(nodeId));
+            invalidate(mDirtyRect);
+        }
+        if (mNodeCount == mNodeList.length) {
+            // a replayed password may contain repeated nodes
+            mNodeList = Arrays.copyOf(mNodeList, mNodeList.length * 2);
+        }
+        mNodeList[mNodeCount++] = nodeId;
+        mVisitedNodes[nodeId >> 6] |= 1L << nodeId;
+        appendLine(lastNode, nodeId);
+        if (triggerTouch && mIsGestureMeasuring) {
+            mMetrics.onNodeTouched(nodeId, mTouchSampleTime);
+        }
+        if (triggerTouch && mRecorder != null) {
+            mRecorder.recordNode(mTouchSampleTime, nodeId);
+        }
+        if (triggerTouch && mOnNodeTouchListener != null) {
+            mOnNodeTouchListener.onNodeTouched(nodeId);
+        }
+        if (triggerTouch && mOnNodesTouchListener != null && mPendingTouchStart < 0) {
+            mPendingTouchStart = mNodeCount - 1;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                postOnAnimation(mNodesTouchAction);
+            } else {
+                post(mNodesTouchAction);
             }
         }
     }
 
-    private void tryAppendMidNode(int row, int column) {
+    private void deliverNodesTouched() {
+        int start = mPendingTouchStart;
+        mPendingTouchStart = -1;
+        if (mOnNodesTouchListener != null && start >= 0 && start < mNodeCount) {
+            mOnNodesTouchListener.onNodesTouched(mNodeList, start, mNodeCount - start);
+        }
+    }
+
+    /**
+     * auto link the nodes between first and second
+     * 检测两个节点间的中间检点是否未连接，否则按顺序连接。
+     *
+     * @param first
+     * @param second
+     */
+    private void autoLinkNode(int first, int second) {
+        int[] midNodes = mMidNodes;
+        int count = mGrid.getMidNodes(first, second, midNodes);
         if (DEBUG) {
-            Log.d(TAG, String.format("tryAppendMidNode(row = %d, column = %d)", row, column));
+            Log.d(TAG, String.format("autoLinkNode(%d, %d), mid nodes count = %d", first, second, count));
+        }
+        for (int i = 0; i < count; i++) {
+            tryAppendMidNode(midNodes[i]);
         }
-        NodeView mid = (NodeView) getChildAt(row * mSize + column);
-        if (mNodeList.contains(mid))
+    }
+
+    private boolean isNodeVisited(int nodeId) {
+        return (mVisitedNodes[nodeId >> 6] & (1L << nodeId)) != 0;
+    }
+
+    private void tryAppendMidNode(int mid) {
+        if (DEBUG) {
+            Log.d(TAG, String.format("tryAppendMidNode(row = %d, column = %d)", mGrid.getRow(mid), mGrid.getColumn(mid)));
+        }
+        if (isNodeVisited(mid))
             return;
-        mid.setState(NodeView.STATE_HIGHLIGHT);
+        setNodeState(mid, NodeView.STATE_HIGHLIGHT, true);
         addNodeToList(mid, true);
     }
 
+    /**
+     * append the segment from lastNode to nodeId to the line buffers.
+     *
+     * @param lastNode the previous committed node, or {@link #NO_NODE} if nodeId is the first one
+     * @param nodeId   the committed node
+     */
+    private void appendLine(int lastNode, int nodeId) {
+        float x = mLayout.getNodeCenterX(nodeId);
+        float y = mLayout.getNodeCenterY(nodeId);
+
+        if (mLinePath != null) {
+            if (lastNode == NO_NODE) {
+                mLinePath.moveTo(x, y);
+            } else {
+                mLinePath.lineTo(x, y);
+            }
+        }
+
+        if (lastNode != NO_NODE) {
+            if (mLineSegmentsCount + 4 > mLineSegments.length) {
+                // a replayed password may contain repeated nodes
+                mLineSegments = Arrays.copyOf(mLineSegments, mLineSegments.length * 2);
+            }
+            mLineSegments[mLineSegmentsCount++] = mLayout.getNodeCenterX(lastNode);
+            mLineSegments[mLineSegmentsCount++] = mLayout.getNodeCenterY(lastNode);
+            mLineSegments[mLineSegmentsCount++] = x;
+            mLineSegments[mLineSegmentsCount++] = y;
+        }
+    }
+
+    private void rebuildLine() {
+        mLineSegmentsCount = 0;
+        if (mLinePath != null) {
+            mLinePath.rewind();
+        }
+        int lastNode = NO_NODE;
+        for (int i = 0; i < mNodeCount; i++) {
+            int nodeId = mNodeList[i];
+            appendLine(lastNode, nodeId);
+            lastNode = nodeId;
+        }
+    }
+
     @Override
-    protected void onDraw(Canvas canvas) {
-        for (int i = 0; i < mNodeList.size() - 1; i++) {
-            NodeView first = mNodeList.get(i);
-            NodeView second = mNodeList.get(i + 1);
-            drawPatternLine(canvas, first.getCenterX(), first.getCenterY(), second.getCenterX(), second.getCenterY());
+    public void invalidate() {
+        if (mIsGestureMeasuring) {
+            mMetrics.mInvalidateCount++;
         }
-        if (currentNode != null) {
-            drawPatternLine(canvas, currentNode.getCenterX(), currentNode.getCenterY(), mPositionX, mPositionY);
+        super.invalidate();
+    }
+
+    @Override
+    public void invalidate(Rect dirty) {
+        if (mIsGestureMeasuring) {
+            mMetrics.mInvalidateCount++;
         }
+        super.invalidate(dirty);
     }
 
-    private void drawPatternLine(Canvas canvas, float startX, float startY, float endX, float endY) {
+    @Override
+    public void invalidate(int l, int t, int r, int b) {
+        if (mIsGestureMeasuring) {
+            mMetrics.mInvalidateCount++;
+        }
+        super.invalidate(l, t, r, b);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mIsGestureMeasuring) {
+            drawPattern(canvas);
+            return;
+        }
+
+        mMetrics.onDrawStart(SystemClock.uptimeMillis());
+        long start = System.nanoTime();
+        drawPattern(canvas);
+        long end = System.nanoTime();
+        mMetrics.onDrawEnd(end - start, end);
+    }
+
+    private void drawPattern(Canvas canvas) {
         if (mIsPatternVisible) {
-            canvas.drawLine(startX, startY, endX, endY, mPaint);
+            if (mIsLineRound) {
+                canvas.drawPath(mLinePath, mPaint);
+            } else if (mLineSegmentsCount > 0) {
+                canvas.drawLines(mLineSegments, 0, mLineSegmentsCount, mPaint);
+            }
+        }
+        if (currentNode != NO_NODE) {
+            drawPatternLine(canvas, mLayout.getNodeCenterX(currentNode), mLayout.getNodeCenterY(currentNode), mTrailingX, mTrailingY);
+        }
+        if (mIsFlatMode) {
+            drawNodes(canvas);
         }
     }
 
-    private NodeView getNodeAt(float x, float y) {
-        for (int n = 0; n < getChildCount(); n++) {
-            NodeView node = (NodeView) getChildAt(n);
-            if (!(x >= node.getLeft() - mNodeAreaExpand && x < node.getRight() + mNodeAreaExpand)) {
+    private void drawNodes(Canvas canvas) {
+        long drawingTime = getDrawingTime();
+        int[] bounds = mLayout.getNodeBounds();
+        boolean isAtlas = mIsNodeAtlas && ensureNodeAtlas();
+        for (int n = 0; n < mTotalSize; n++) {
+            Drawable drawable = isAtlas ? null : getNodeDrawable(mNodeStates[n]);
+            if (isAtlas ? mNodeAtlasCells[mNodeStates[n]] < 0 : drawable == null) {
                 continue;
             }
-            if (!(y >= node.getTop() - mNodeAreaExpand && y < node.getBottom() + mNodeAreaExpand)) {
-                continue;
+            int index = n * 4;
+            int l = bounds[index];
+            int t = bounds[index + 1];
+            int r = bounds[index + 2];
+            int b = bounds[index + 3];
+            int saveCount = applyNodeAnimation(canvas, n, l, t, r, b, drawingTime);
+            if (isAtlas) {
+                drawNodeFromAtlas(canvas, mNodeStates[n], l, t, r, b);
+            } else {
+                drawable.setBounds(l, t, r, b);
+                drawable.draw(canvas);
+            }
+            if (saveCount >= 0) {
+                canvas.restoreToCount(saveCount);
+            }
+        }
+    }
+
+    /**
+     * render the drawable of each node state into the atlas if the measured node size has changed.
+     * states sharing the same drawable share the same cell.
+     *
+     * @return false if the atlas is not available, e.g. not laid out yet
+     */
+    private boolean ensureNodeAtlas() {
+        int size = mLayout.getMeasuredNodeSize();
+        if (size <= 0) {
+            return false;
+        }
+        if (mNodeAtlas != null && mNodeAtlasSize == size) {
+            return true;
+        }
+
+        Drawable[] cellDrawables = new Drawable[NodeView.STATE_COUNT];
+        int cellCount = 0;
+        for (int state = 0; state < NodeView.STATE_COUNT; state++) {
+            Drawable drawable = getNodeDrawable(state);
+            int cell = -1;
+            for (int i = 0; i < cellCount && drawable != null; i++) {
+                if (cellDrawables[i] == drawable) {
+                    cell = i;
+                    break;
+                }
+            }
+            if (cell < 0 && drawable != null) {
+                cell = cellCount++;
+                cellDrawables[cell] = drawable;
             }
-            return node;
+            mNodeAtlasCells[state] = cell;
+        }
+        if (cellCount == 0) {
+            return false;
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, String.format("ensureNodeAtlas(), nodeSize = %d, cells = %d", size, cellCount));
+        }
+
+        // the old atlas may still be used by a recorded display list, leave it to gc instead of recycling
+        Bitmap atlas = Bitmap.createBitmap(size * cellCount, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(atlas);
+        for (int i = 0; i < cellCount; i++) {
+            Drawable drawable = cellDrawables[i];
+            // drawables are shared with node views, keep their bounds
+            Rect oldBounds = drawable.copyBounds();
+            drawable.setBounds(i * size, 0, (i + 1) * size, size);
+            drawable.draw(canvas);
+            drawable.setBounds(oldBounds);
+        }
+
+        if (mNodeAtlasPaint == null) {
+            mNodeAtlasPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            mNodeAtlasSrc = new Rect();
+            mNodeAtlasDst = new Rect();
+        }
+        mNodeAtlas = atlas;
+        mNodeAtlasSize = size;
+        return true;
+    }
+
+    /**
+     * blit the cell of the node state from the atlas, {@link #ensureNodeAtlas()} must have returned true.
+     */
+    private void drawNodeFromAtlas(Canvas canvas, int state, int l, int t, int r, int b) {
+        int cell = mNodeAtlasCells[state];
+        if (cell < 0) {
+            return;
+        }
+        mNodeAtlasSrc.set(cell * mNodeAtlasSize, 0, (cell + 1) * mNodeAtlasSize, mNodeAtlasSize);
+        mNodeAtlasDst.set(l, t, r, b);
+        canvas.drawBitmap(mNodeAtlas, mNodeAtlasSrc, mNodeAtlasDst, mNodeAtlasPaint);
+    }
+
+    /**
+     * apply the running highlight animation of a node in flat mode.
+     *
+     * @return the save count to restore, or -1 if no animation is applied
+     */
+    private int applyNodeAnimation(Canvas canvas, int nodeId, int l, int t, int r, int b, long drawingTime) {
+        Animation anim = mNodeAnims != null ? mNodeAnims[nodeId] : null;
+        // not started or canceled
+        if (anim == null || anim.getStartTime() == Long.MIN_VALUE) {
+            return -1;
+        }
+        if (!anim.isInitialized()) {
+            anim.initialize(r - l, b - t, getWidth(), getHeight());
+            anim.initializeInvalidateRegion(0, 0, r - l, b - t);
+        }
+        mNodeTransformation.clear();
+        boolean more = anim.getTransformation(drawingTime, mNodeTransformation);
+        if (more || !anim.getFillAfter()) {
+            // covers both the previous and the current transformed node area
+            anim.getInvalidateRegion(0, 0, r - l, b - t, mNodeAnimRegion, mNodeTransformation);
+            invalidate(l + (int) Math.floor(mNodeAnimRegion.left), t + (int) Math.floor(mNodeAnimRegion.top),
+                    l + (int) Math.ceil(mNodeAnimRegion.right), t + (int) Math.ceil(mNodeAnimRegion.bottom));
+        }
+        if (!more && !anim.getFillAfter()) {
+            anim.cancel();
+            return -1;
+        }
+
+        int saveCount;
+        float alpha = mNodeTransformation.getAlpha();
+        if (alpha < 1f) {
+            saveCount = canvas.saveLayerAlpha(0, 0, getWidth(), getHeight(), (int) (alpha * 255),
+                    Canvas.ALL_SAVE_FLAG);
+        } else {
+            saveCount = canvas.save();
+        }
+        canvas.translate(l, t);
+        canvas.concat(mNodeTransformation.getMatrix());
+        canvas.translate(-l, -t);
+        return saveCount;
+    }
+
+    private void drawPatternLine(Canvas canvas, float startX, float startY, float endX, float endY) {
+        if (mIsPatternVisible) {
+            canvas.drawLine(startX, startY, endX, endY, mPaint);
         }
-        return null;
     }
 
     private boolean isMeasureModeExactly(int measureMode) {
@@ -760,6 +1535,83 @@ public class PatternLockView extends ViewGroup {
         int onFinish(Password password);
     }
 
+    /**
+     * Callback to verify the password asynchronously, e.g. in a background thread.
+     * The lock view shows the pending state and ignores touch events until the result is set.
+     * 异步密码处理接口
+     */
+    public interface AsyncCallBack {
+        /**
+         * called in the UI thread when the user finishes the input.
+         *
+         * @param password     password
+         * @param verification call {@link Verification#setResult(int)} in any thread when the password is verified
+         */
+        void onFinish(Password password, Verification verification);
+    }
+
+    /**
+     * Handle to set the result of an {@link AsyncCallBack}.
+     */
+    public final class Verification {
+        private boolean mIsDone;
+        private int mResult;
+
+        private final Runnable mResultAction = new Runnable() {
+            @Override
+            public void run() {
+                onVerificationResult(Verification.this, mResult);
+            }
+        };
+
+        private Verification() {
+        }
+
+        /**
+         * set the verification result, can be called in any thread. only the first result is applied.
+         *
+         * @param result {@link #CODE_PASSWORD_CORRECT} or {@link #CODE_PASSWORD_ERROR}
+         */
+        public void setResult(int result) {
+            synchronized (this) {
+                if (mIsDone) {
+                    return;
+                }
+                mIsDone = true;
+                mResult = result;
+            }
+            // not View#post(), which holds the action until the view is attached before api 24
+            getMainHandler().post(mResultAction);
+        }
+
+        /**
+         * @return true if the lock view has been reset and the result will be ignored
+         */
+        public boolean isCancelled() {
+            return mPendingVerification != this;
+        }
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (sMainHandler == null) {
+            sMainHandler = new Handler(Looper.getMainLooper());
+        }
+        return sMainHandler;
+    }
+
+    /**
+     * Callback to receive the performance metrics of each gesture
+     * 手势性能统计回调接口
+     */
+    public interface OnGestureMetricsListener {
+        /**
+         * called in the UI thread when the user lifts the finger.
+         *
+         * @param metrics metrics of the gesture, reused for the next gesture
+         */
+        void onGestureMetrics(GestureMetrics metrics);
+    }
+
     /**
      * Callback to handle node touch event
      * 节点点击回调监听器接口
@@ -768,24 +1620,105 @@ public class PatternLockView extends ViewGroup {
         void onNodeTouched(int NodeId);
     }
 
+    public interface OnNodesTouchListener {
+        /**
+         * called in the UI thread on the next frame after nodes are touched, with all the nodes touched
+         * since the last call (including the auto linked ones) in order.
+         *
+         * @param nodeIds all the touched node ids of the gesture, only valid during the call, do not modify or keep it
+         * @param start   index of the first newly touched node in nodeIds
+         * @param count   count of the newly touched nodes
+         */
+        void onNodesTouched(int[] nodeIds, int start, int count);
+    }
+
     private class NodeView extends View {
 
         public static final int STATE_NORMAL = 0;
         public static final int STATE_HIGHLIGHT = 1;
         public static final int STATE_CORRECT = 2;
         public static final int STATE_ERROR = 3;
+        public static final int STATE_PENDING = 4;
+        public static final int STATE_COUNT = 5;
 
         private int mId;
-        private int mState = STATE_NORMAL;
+        // highlight animation of this node, loaded once and restarted for each highlight
+        private Animation mHighlightAnim;
+        private Animator mHighlightAnimator;
 
         public NodeView(Context context, int num) {
             super(context);
             this.mId = num;
-            setBackgroundDrawable(mNodeSrc);
+            setBackgroundDrawable(mIsNodeAtlas ? null : mNodeSrc);
+        }
+
+        /**
+         * reuse the view for the given node in normal state
+         */
+        public void reset(int num) {
+            mId = num;
+            stopHighlightAnim();
+            setBackgroundDrawable(mIsNodeAtlas ? null : mNodeSrc);
+        }
+
+        private void startHighlightAnim() {
+            if (mNodeOnAnimator != null) {
+                startHighlightAnimator();
+            } else if (mNodeOnAnim != 0) {
+                if (mHighlightAnim == null) {
+                    mHighlightAnim = AnimationUtils.loadAnimation(getContext(), mNodeOnAnim);
+                }
+                mHighlightAnim.reset();
+                startAnimation(mHighlightAnim);
+            }
+        }
+
+        /**
+         * animate the render properties of the node, which doesn't redraw the lock view
+         * and runs without re-recording display lists on hardware accelerated windows.
+         */
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        private void startHighlightAnimator() {
+            if (mHighlightAnimator == null) {
+                mHighlightAnimator = mNodeOnAnimator.clone();
+                mHighlightAnimator.setTarget(this);
+            }
+            mHighlightAnimator.cancel();
+            mHighlightAnimator.start();
+        }
+
+        private void stopHighlightAnim() {
+            clearAnimation();
+            if (mHighlightAnimator != null) {
+                stopHighlightAnimator();
+            }
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        private void stopHighlightAnimator() {
+            mHighlightAnimator.cancel();
+            // restore the render properties changed by the animator
+            setScaleX(1f);
+            setScaleY(1f);
+            setAlpha(1f);
+            setTranslationX(0f);
+            setTranslationY(0f);
+            setRotation(0f);
+        }
+
+        /**
+         * switch between drawing from the atlas and the background drawable of current state
+         */
+        public void updateBackground() {
+            setBackgroundDrawable(mIsNodeAtlas ? null : getNodeDrawable(mNodeStates[mId]));
+            invalidate();
         }
 
-        public boolean isHighLighted() {
-            return mState == STATE_HIGHLIGHT;
+        @Override
+        protected void onDraw(Canvas canvas) {
+            if (mIsNodeAtlas && ensureNodeAtlas()) {
+                drawNodeFromAtlas(canvas, mNodeStates[mId], 0, 0, getWidth(), getHeight());
+            }
         }
 
         public void setState(int state) {
@@ -794,7 +1727,19 @@ public class PatternLockView extends ViewGroup {
 
         public void setState(int state, boolean anim) {
 
-            if (mState == state) {
+            if (mNodeStates[mId] == state) {
+                return;
+            }
+
+            if (mIsNodeAtlas) {
+                // drawn from the atlas in onDraw(), no background drawable swapping
+                if (state == STATE_NORMAL) {
+                    stopHighlightAnim();
+                } else if (state == STATE_HIGHLIGHT && anim) {
+                    startHighlightAnim();
+                }
+                mNodeStates[mId] = state;
+                invalidate();
                 return;
             }
 
@@ -802,14 +1747,14 @@ public class PatternLockView extends ViewGroup {
 
                 case STATE_NORMAL:
                     setBackgroundDrawable(mNodeSrc);
-                    clearAnimation();
+                    stopHighlightAnim();
                     break;
                 case STATE_HIGHLIGHT:
                     if (mNodeHighlightSrc != null) {
                         setBackgroundDrawable(mNodeHighlightSrc);
                     }
-                    if (anim && mNodeOnAnim != 0) {
-                        startAnimation(AnimationUtils.loadAnimation(getContext(), mNodeOnAnim));
+                    if (anim) {
+                        startHighlightAnim();
                     }
                     break;
                 case STATE_CORRECT:
@@ -822,16 +1767,13 @@ public class PatternLockView extends ViewGroup {
                         setBackgroundDrawable(mNodeErrorSrc);
                     }
                     break;
+                case STATE_PENDING:
+                    if (mNodePendingSrc != null) {
+                        setBackgroundDrawable(mNodePendingSrc);
+                    }
+                    break;
             }
-            mState = state;
-        }
-
-        public int getCenterX() {
-            return (getLeft() + getRight()) / 2;
-        }
-
-        public int getCenterY() {
-            return (getTop() + getBottom()) / 2;
+            mNodeStates[mId] = state;
         }
 
         public int getNodeId() {
@@ -839,11 +1781,11 @@ public class PatternLockView extends ViewGroup {
         }
 
         public int getRow() {
-            return mId / mSize;
+            return mGrid.getRow(mId);
         }
 
         public int getColumn() {
-            return mId % mSize;
+            return mGrid.getColumn(mId);
         }
 
         @Override
@@ -860,163 +1802,192 @@ public class PatternLockView extends ViewGroup {
         }
     }
 
-    public static class Password {
+    /**
+     * Password of the pattern, an ordered sequence of node ids.
+     * The string form and the list form are only built when they are requested.
+     */
+    public static class Password extends Pattern {
+        /**
+         * @deprecated use {@link #getList()}, will be removed in 3.0.0
+         */
+        @Deprecated
         public final List<Integer> list;
+
+        /**
+         * @deprecated use {@link #getString()}, will be removed in 3.0.0
+         */
+        @Deprecated
         public final String string;
 
-        static Password buildPassword(List<NodeView> nodeViewList) {
-            List<Integer> idList = new ArrayList<>();
-            for (NodeView nodeView : nodeViewList) {
-                Integer id = nodeView.getNodeId();
-                idList.add(id);
-            }
-            return new Password(idList);
+        static Password buildPassword(int[] nodeIds, int count) {
+            return new Password(Arrays.copyOf(nodeIds, count), false);
         }
 
         public Password(List<Integer> idList) {
-            // build password id list
-            list = new ArrayList<>();
-            for (Integer id : idList) {
-                if (id == null) {
-                    throw new IllegalStateException("id CAN NOT be null!");
-                }
-                list.add(id);
-            }
-
-            // build password string
-            string = buildPasswordString(idList);
+            super(idList);
+            // the deprecated fields are filled up front, store passwords in bulk as Pattern instead
+            list = getList();
+            string = getString();
         }
 
-        protected String buildPasswordString(List<Integer> nodeIdList) {
-            StringBuilder passwordBuilder = new StringBuilder("[");
-            for (int i = 0; i < nodeIdList.size(); i++) {
-                int id = nodeIdList.get(i);
-                if (i != 0) {
-                    passwordBuilder.append("-");
-                }
-                passwordBuilder.append(id);
+        public Password(int[] ids) {
+            this(ids, true);
+        }
 
-            }
-            passwordBuilder.append("]");
-            return passwordBuilder.toString();
+        private Password(int[] ids, boolean copy) {
+            super(ids, copy);
+            list = getList();
+            string = getString();
         }
 
         @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
+        public String toString() {
+            return "Password{ " + getString() + " }";
+        }
+    }
 
-            if (obj instanceof Password) {
-                Password anotherPwd = (Password) obj;
-                return string.equals(anotherPwd.string);
-            }
+    /**
+     * Plays the password animation on the UI thread, driven by animation frames.
+     * Nodes are shown according to the time elapsed since the start, so intervals never drift.
+     */
+    private class PasswordPlayer implements Runnable {
+        private int[] mPassword;
+        private long mInterval;
+        private int mRepeatTime;
+        private onAnimFinishListener mListener;
 
-            return false;
+        private boolean mIsRunning;
+        private boolean mIsPaused;
+        private long mStartTime;
+        // elapsed time when paused
+        private long mPausedTime;
+        // current round and count of nodes shown in current round
+        private int mRound;
+        private int mShownCount;
+
+        public void start(int[] password, int repeatTime, long interval, onAnimFinishListener listener) {
+            mPassword = password.clone();
+            mRepeatTime = repeatTime;
+            mInterval = interval;
+            mListener = listener;
+            mIsRunning = true;
+            mIsPaused = false;
+            mRound = -1;
+            mStartTime = AnimationUtils.currentAnimationTimeMillis();
+            update(0);
         }
 
-        @Override
-        public int hashCode() {
-            return string.hashCode();
+        public boolean isRunning() {
+            return mIsRunning;
         }
 
-        @Override
-        public String toString() {
-            return "Password{ " + string + " }";
+        public boolean isPaused() {
+            return mIsPaused;
         }
-    }
 
-    private static class ShowAnimThread extends Thread {
-        private WeakReference<PatternLockView> mViewRef;
-        private List<Integer> mPassword;
-        private long mNodeTimeInterval = 500L;
-        private int mRepeatTime = 1;
-        private volatile boolean mWorking = false;
-        private volatile boolean mStopping = false;
-        private onAnimFinishListener mListener;
-
-        public ShowAnimThread(PatternLockView lockView, List<Integer> password) {
-            this.mViewRef = new WeakReference<PatternLockView>(lockView);
-            this.mPassword = password;
+        public void pause() {
+            if (!mIsRunning || mIsPaused) {
+                return;
+            }
+            mIsPaused = true;
+            mPausedTime = AnimationUtils.currentAnimationTimeMillis() - mStartTime;
+            removeCallbacks(this);
         }
 
-        public ShowAnimThread setRepeatTime(int repeatTime) {
-            this.mRepeatTime = repeatTime;
-            return this;
+        public void resume() {
+            if (!mIsRunning || !mIsPaused) {
+                return;
+            }
+            mIsPaused = false;
+            mStartTime = AnimationUtils.currentAnimationTimeMillis() - mPausedTime;
+            update(mPausedTime);
         }
 
-        public ShowAnimThread setInterval(long timeInterval) {
-            this.mNodeTimeInterval = timeInterval;
-            return this;
+        public void seek(long time) {
+            if (!mIsRunning) {
+                return;
+            }
+            if (time < 0) {
+                time = 0;
+            }
+            // redraw current round from its first node
+            mRound = -1;
+            if (mIsPaused) {
+                mPausedTime = time;
+            } else {
+                mStartTime = AnimationUtils.currentAnimationTimeMillis() - time;
+            }
+            update(time);
         }
 
-        public ShowAnimThread setOnFinishListenner(onAnimFinishListener listener) {
-            this.mListener = listener;
-            return this;
+        public void stop() {
+            if (mIsRunning) {
+                finish(true);
+            }
         }
 
+        @Override
         public void run() {
-            mWorking = true;
-            int repeatTime = mRepeatTime;
-
-            while (repeatTime < 0 || repeatTime-- > 0) {
-                final PatternLockView view = mViewRef.get();
-                if (view == null) {
-                    break;
-                }
+            if (mIsRunning && !mIsPaused) {
+                update(AnimationUtils.currentAnimationTimeMillis() - mStartTime);
+            }
+        }
 
-                for (int i = 0; i < mPassword.size() && !mStopping; ++i) {
-                    final boolean isInitalNode = i == 0;
-                    final PatternLockView.NodeView curNode = (PatternLockView.NodeView)
-                            view.getChildAt(mPassword.get(i));
-                    view.post(new Runnable() {
-                        public void run() {
-                            if (mStopping) {
-                                return;
-                            }
-                            if (isInitalNode) {
-                                view.reset();
-                            }
-                            curNode.setState(NodeView.STATE_HIGHLIGHT);
-                            view.addNodeToList(curNode, false);
-                            view.invalidate();
-                        }
-                    });
-                    SystemClock.sleep(this.mNodeTimeInterval);
-                }
+        private void update(long elapsed) {
+            long roundTime = mInterval * mPassword.length;
+            if (roundTime <= 0 || (mRepeatTime >= 0 && elapsed >= roundTime * mRepeatTime)) {
+                finish(false);
+                return;
+            }
 
-                if (mStopping) {
-                    break;
-                }
+            int round = (int) (elapsed / roundTime);
+            long roundElapsed = elapsed % roundTime;
+            if (round != mRound) {
+                reset();
+                mRound = round;
+                mShownCount = 0;
             }
 
-            final PatternLockView view = mViewRef.get();
-            if (view != null) {
-                view.post(new Runnable() {
-                    public void run() {
-                        view.setTouchEnabled(true);
-                        if (!mStopping) {
-                            view.showPassword(mPassword);
-                        }
-                        if (mListener != null) {
-                            mListener.onFinish(mStopping);
-                        }
-                    }
-                });
+            int targetCount = (int) (roundElapsed / mInterval) + 1;
+            while (mShownCount < targetCount) {
+                int nodeId = mPassword[mShownCount++];
+                setNodeState(nodeId, NodeView.STATE_HIGHLIGHT, true);
+                addNodeToList(nodeId, false);
             }
 
-            mWorking = false;
+            if (!mIsPaused) {
+                // wake up at the frame of the next node, or the next round
+                scheduleNextFrame(mShownCount * mInterval - roundElapsed);
+            }
         }
 
-        public boolean isRunning() {
-            return mWorking;
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        private void scheduleNextFrame(long delay) {
+            removeCallbacks(this);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                postOnAnimationDelayed(this, delay);
+            } else {
+                postDelayed(this, delay);
+            }
         }
 
-        public void end() {
-            mStopping = true;
-            final PatternLockView view = mViewRef.get();
-            if (view != null) {
-                view.reset();
+        private void finish(boolean isStopped) {
+            mIsRunning = false;
+            mIsPaused = false;
+            removeCallbacks(this);
+
+            setTouchEnabled(true);
+            if (isStopped) {
+                reset();
+            } else {
+                showPassword(mPassword);
+            }
+
+            onAnimFinishListener listener = mListener;
+            mListener = null;
+            mPassword = null;
+            if (listener != null) {
+                listener.onFinish(isStopped);
             }
         }
     }
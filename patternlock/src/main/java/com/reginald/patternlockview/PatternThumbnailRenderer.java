@@ -0,0 +1,367 @@
+package com.reginald.patternlockview;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.widget.ImageView;
+
+/**
+ * Renders small previews of patterns into bitmaps without creating a {@link PatternLockView}, e.g. for the rows of a list.
+ * Bitmaps are rendered on a background thread and kept in an LRU cache bounded by bytes,
+ * so a cached preview is shown synchronously while scrolling.
+ * <p>
+ * Nodes are laid out in Identical-Area mode, the node size and the line width are scaled from the
+ * {@link Style} to the size of the preview.
+ * 图案缩略图渲染：后台线程渲染图案预览，并以LRU缓存。
+ */
+public class PatternThumbnailRenderer {
+    private static final String TAG = "PatternThumbnailRenderer";
+    private static final float DEFAULT_NODE_SIZE_RATIO = 1 / 3f;
+
+    private final long mMaxBytes;
+    private long mBytes;
+    // access ordered, guarded by this
+    private final LinkedHashMap<Key, Bitmap> mCache = new LinkedHashMap<>(32, 0.75f, true);
+
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // UI thread only: the preview each image view is waiting for, and the previews being rendered
+    private final WeakHashMap<ImageView, Key> mTargets = new WeakHashMap<>();
+    private final Set<Key> mRendering = new HashSet<>();
+
+    /**
+     * @param maxBytes max bytes of the cached bitmaps
+     */
+    public PatternThumbnailRenderer(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be larger than zero!");
+        }
+        mMaxBytes = maxBytes;
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "PatternThumbnailRenderer");
+            }
+        });
+    }
+
+    /**
+     * show the preview of the password in the image view, immediately if it's cached,
+     * otherwise the image is cleared and the preview is set when it's rendered.
+     * UI thread only. image views reused for another password never receive the stale preview.
+     * after {@link #shutdown()}, only the cached previews are shown.
+     *
+     * @param size width and height of the preview in pixels
+     */
+    public void loadInto(ImageView target, Pattern password, int rowCount, int columnCount, int size,
+                         Style style) {
+        Key key = new Key(password, rowCount, columnCount, size, style);
+        Bitmap bitmap = getCached(key);
+        if (bitmap != null) {
+            mTargets.remove(target);
+            target.setImageBitmap(bitmap);
+            return;
+        }
+
+        target.setImageDrawable(null);
+        if (mExecutor.isShutdown()) {
+            mTargets.remove(target);
+            return;
+        }
+        mTargets.put(target, key);
+        if (mRendering.add(key)) {
+            mExecutor.execute(new RenderTask(key));
+        }
+    }
+
+    /**
+     * @return the cached preview, or null if it's not rendered yet
+     */
+    public Bitmap getCached(Pattern password, int rowCount, int columnCount, int size, Style style) {
+        return getCached(new Key(password, rowCount, columnCount, size, style));
+    }
+
+    /**
+     * render the preview of the password on the calling thread, the result is not cached.
+     *
+     * @param size width and height of the preview in pixels
+     */
+    public static Bitmap render(Pattern password, int rowCount, int columnCount, int size, Style style) {
+        PatternGrid grid = new PatternGrid(rowCount, columnCount);
+        int[] ids = password.toArray();
+        grid.ensureValidPassword(ids);
+        if (size <= 0) {
+            throw new IllegalArgumentException("invalid size: " + size);
+        }
+
+        float cellSize = Math.min((float) size / columnCount, (float) size / rowCount);
+        PatternLayout layout = new PatternLayout();
+        layout.setGrid(grid);
+        layout.setNodeSize(Math.max(1f, cellSize * style.mNodeSizeRatio));
+        layout.measure(size, true, size, true);
+        layout.layout(size, size);
+
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        // lines under the nodes, the same as the lock view
+        Paint paint = new Paint(Paint.DITHER_FLAG);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(Math.max(1f, cellSize * style.mLineWidthRatio));
+        paint.setColor(style.mLineColor);
+        paint.setAntiAlias(true);
+        paint.setStrokeJoin(style.mIsLineRound ? Paint.Join.ROUND : Paint.Join.MITER);
+        paint.setStrokeCap(style.mIsLineRound ? Paint.Cap.ROUND : Paint.Cap.BUTT);
+        for (int i = 1; i < ids.length; i++) {
+            canvas.drawLine(layout.getNodeCenterX(ids[i - 1]), layout.getNodeCenterY(ids[i - 1]),
+                    layout.getNodeCenterX(ids[i]), layout.getNodeCenterY(ids[i]), paint);
+        }
+
+        boolean[] selected = new boolean[grid.getTotalSize()];
+        for (int id : ids) {
+            selected[id] = true;
+        }
+        // drawables are shared with the UI thread, draw with new instances
+        Drawable normal = newDrawable(style.mNodeSrc);
+        Drawable highlight = newDrawable(style.mNodeHighlightSrc);
+        for (int n = 0; n < grid.getTotalSize(); n++) {
+            Drawable drawable = selected[n] && highlight != null ? highlight : normal;
+            if (drawable != null) {
+                drawable.setBounds(layout.getNodeLeft(n), layout.getNodeTop(n),
+                        layout.getNodeRight(n), layout.getNodeBottom(n));
+                drawable.draw(canvas);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * remove all the cached previews.
+     */
+    public synchronized void clear() {
+        mCache.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * stop the background thread, previews not rendered yet are dropped. UI thread only.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+        mTargets.clear();
+        mRendering.clear();
+    }
+
+    private static Drawable newDrawable(Drawable drawable) {
+        if (drawable == null) {
+            return null;
+        }
+        Drawable.ConstantState state = drawable.getConstantState();
+        return state != null ? state.newDrawable() : drawable;
+    }
+
+    private synchronized Bitmap getCached(Key key) {
+        return mCache.get(key);
+    }
+
+    private synchronized void putCached(Key key, Bitmap bitmap) {
+        long bytes = getBytes(bitmap);
+        if (bytes > mMaxBytes) {
+            return;
+        }
+        Bitmap old = mCache.put(key, bitmap);
+        if (old != null) {
+            mBytes -= getBytes(old);
+        }
+        mBytes += bytes;
+
+        // evict the least recently used ones
+        Iterator<Map.Entry<Key, Bitmap>> iterator = mCache.entrySet().iterator();
+        while (mBytes > mMaxBytes && iterator.hasNext()) {
+            Map.Entry<Key, Bitmap> entry = iterator.next();
+            mBytes -= getBytes(entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long getBytes(Bitmap bitmap) {
+        // getByteCount() requires API 12
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private void onRendered(Key key, Bitmap bitmap) {
+        mRendering.remove(key);
+        if (bitmap == null) {
+            return;
+        }
+        List<ImageView> targets = null;
+        for (Map.Entry<ImageView, Key> entry : mTargets.entrySet()) {
+            if (key.equals(entry.getValue())) {
+                if (targets == null) {
+                    targets = new ArrayList<>();
+                }
+                targets.add(entry.getKey());
+            }
+        }
+        if (targets != null) {
+            for (ImageView target : targets) {
+                mTargets.remove(target);
+                target.setImageBitmap(bitmap);
+            }
+        }
+    }
+
+    private class RenderTask implements Runnable {
+        private final Key mKey;
+
+        RenderTask(Key key) {
+            mKey = key;
+        }
+
+        @Override
+        public void run() {
+            Bitmap bitmap = null;
+            try {
+                bitmap = render(mKey.mPassword, mKey.mRowCount, mKey.mColumnCount, mKey.mSize, mKey.mStyle);
+                putCached(mKey, bitmap);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "failed to render the preview of " + mKey.mPassword, e);
+            } finally {
+                final Bitmap result = bitmap;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onRendered(mKey, result);
+                    }
+                });
+            }
+        }
+    }
+
+    private static final class Key {
+        private final Pattern mPassword;
+        private final int mRowCount;
+        private final int mColumnCount;
+        private final int mSize;
+        private final Style mStyle;
+        private final int mHash;
+
+        Key(Pattern password, int rowCount, int columnCount, int size, Style style) {
+            if (password == null || style == null) {
+                throw new IllegalArgumentException("password and style CAN NOT be null!");
+            }
+            mPassword = password;
+            mRowCount = rowCount;
+            mColumnCount = columnCount;
+            mSize = size;
+            mStyle = style;
+            int hash = password.hashCode();
+            hash = 31 * hash + rowCount;
+            hash = 31 * hash + columnCount;
+            hash = 31 * hash + size;
+            mHash = 31 * hash + System.identityHashCode(style);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key another = (Key) obj;
+            return mRowCount == another.mRowCount && mColumnCount == another.mColumnCount
+                    && mSize == another.mSize && mStyle == another.mStyle && mPassword.equals(another.mPassword);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    /**
+     * Look of the previews, read from the same attributes as {@link PatternLockView}:
+     * lock_nodeSrc, lock_nodeHighlightSrc, lock_nodeSize, lock_spacing, lock_lineColor, lock_lineWidth
+     * and lock_lineRound. Previews are cached per Style instance, reuse the same instance.
+     */
+    public static final class Style {
+        private final Drawable mNodeSrc;
+        private final Drawable mNodeHighlightSrc;
+        // node size and line width relative to the size of a cell
+        private final float mNodeSizeRatio;
+        private final float mLineWidthRatio;
+        private final int mLineColor;
+        private final boolean mIsLineRound;
+
+        private Style(Context context, TypedArray a) {
+            mNodeSrc = a.getDrawable(R.styleable.PatternLockView_lock_nodeSrc);
+            mNodeHighlightSrc = a.getDrawable(R.styleable.PatternLockView_lock_nodeHighlightSrc);
+            float nodeSize = a.getDimension(R.styleable.PatternLockView_lock_nodeSize, 0);
+            float spacing = a.getDimension(R.styleable.PatternLockView_lock_spacing, -1);
+            float lineWidth = a.getDimension(R.styleable.PatternLockView_lock_lineWidth, 5
+                    * context.getResources().getDisplayMetrics().density);
+            mLineColor = a.getColor(R.styleable.PatternLockView_lock_lineColor, Color.argb(0xb2, 0xff, 0xff, 0xff));
+            mIsLineRound = a.getBoolean(R.styleable.PatternLockView_lock_lineRound, false);
+
+            if (nodeSize <= 0) {
+                throw new IllegalStateException("nodeSize must be provided and larger than zero!");
+            }
+            // in Identical-Area mode the cell size depends on the view size, keep the default proportion
+            mNodeSizeRatio = spacing >= 0 ? nodeSize / (nodeSize + spacing) : DEFAULT_NODE_SIZE_RATIO;
+            mLineWidthRatio = mNodeSizeRatio * lineWidth / nodeSize;
+        }
+
+        /**
+         * @param attrs attributes of a PatternLockView, e.g. from a layout
+         */
+        public static Style obtain(Context context, AttributeSet attrs) {
+            TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.PatternLockView);
+            try {
+                return new Style(context, a);
+            } finally {
+                a.recycle();
+            }
+        }
+
+        /**
+         * @param styleRes a style resource with the PatternLockView attributes
+         */
+        public static Style obtain(Context context, int styleRes) {
+            TypedArray a = context.obtainStyledAttributes(styleRes, R.styleable.PatternLockView);
+            try {
+                return new Style(context, a);
+            } finally {
+                a.recycle();
+            }
+        }
+    }
+}
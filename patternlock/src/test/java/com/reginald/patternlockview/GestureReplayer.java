@@ -0,0 +1,161 @@
+package com.reginald.patternlockview;
+
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays {@link GestureTrace}s through the real touch pipeline of a laid-out {@link PatternLockView}:
+ * dispatchTouchEvent, hit testing, auto link and {@link PatternLockView.CallBack#onFinish(PatternLockView.Password)}.
+ * <p>
+ * Move samples are batched into one MotionEvent as historical samples, like the input system does
+ * when the finger moves faster than the frame rate.
+ */
+public final class GestureReplayer {
+    private final PatternLockView mLockView;
+    private final int mBatchSize;
+
+    private int[] mExpected;
+    private PatternLockView.Password mLastPassword;
+
+    /**
+     * @param lockView  a measured and laid-out lock view, its {@link PatternLockView.CallBack} is replaced
+     * @param batchSize count of move samples in one MotionEvent, the extra ones are historical samples
+     */
+    public GestureReplayer(PatternLockView lockView, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be larger than zero!");
+        }
+        mLockView = lockView;
+        mBatchSize = batchSize;
+        mLockView.setCallBack(new PatternLockView.CallBack() {
+            @Override
+            public int onFinish(PatternLockView.Password password) {
+                mLastPassword = password;
+                return mExpected != null && Arrays.equals(password.toArray(), mExpected)
+                        ? PatternLockView.CODE_PASSWORD_CORRECT : PatternLockView.CODE_PASSWORD_ERROR;
+            }
+        });
+    }
+
+    /**
+     * @return center x of every node, taken from the laid-out node views
+     */
+    public static float[] getNodeCenterX(PatternLockView lockView) {
+        float[] centers = new float[lockView.getChildCount()];
+        for (int i = 0; i < centers.length; i++) {
+            View node = lockView.getChildAt(i);
+            centers[i] = (node.getLeft() + node.getRight()) / 2f;
+        }
+        return centers;
+    }
+
+    /**
+     * @return center y of every node, taken from the laid-out node views
+     */
+    public static float[] getNodeCenterY(PatternLockView lockView) {
+        float[] centers = new float[lockView.getChildCount()];
+        for (int i = 0; i < centers.length; i++) {
+            View node = lockView.getChildAt(i);
+            centers[i] = (node.getTop() + node.getBottom()) / 2f;
+        }
+        return centers;
+    }
+
+    /**
+     * @return the password produced by the trace, or null if no node is touched
+     */
+    public PatternLockView.Password replay(GestureTrace trace) {
+        mExpected = trace.getExpected();
+        mLastPassword = null;
+
+        int last = trace.getSampleCount() - 1;
+        long downTime = trace.getTime(0);
+        dispatch(MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, trace.getX(0), trace.getY(0), 0));
+
+        int index = 1;
+        while (index < last) {
+            int end = Math.min(index + mBatchSize, last);
+            MotionEvent move = MotionEvent.obtain(downTime, trace.getTime(index), MotionEvent.ACTION_MOVE,
+                    trace.getX(index), trace.getY(index), 0);
+            for (int i = index + 1; i < end; i++) {
+                move.addBatch(trace.getTime(i), trace.getX(i), trace.getY(i), 1f, 1f, 0);
+            }
+            dispatch(move);
+            index = end;
+        }
+
+        dispatch(MotionEvent.obtain(downTime, trace.getTime(last), MotionEvent.ACTION_UP,
+                trace.getX(last), trace.getY(last), 0));
+        return mLastPassword;
+    }
+
+    /**
+     * replay all the traces and compare the passwords with the expected ones.
+     */
+    public Result replayAll(List<GestureTrace> traces) {
+        Result result = new Result();
+        long start = System.nanoTime();
+        for (GestureTrace trace : traces) {
+            PatternLockView.Password password = replay(trace);
+            int[] actual = password != null ? password.toArray() : new int[0];
+            result.mGestureCount++;
+            result.mSampleCount += trace.getSampleCount();
+            if (!Arrays.equals(actual, trace.getExpected())) {
+                if (result.mFirstMismatch == null) {
+                    result.mFirstMismatch = trace + " produced " + Arrays.toString(actual);
+                }
+                result.mMismatchCount++;
+            }
+        }
+        result.mElapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private void dispatch(MotionEvent event) {
+        mLockView.dispatchTouchEvent(event);
+        event.recycle();
+    }
+
+    /**
+     * result of replaying a corpus of traces.
+     */
+    public static final class Result {
+        private int mGestureCount;
+        private long mSampleCount;
+        private int mMismatchCount;
+        private String mFirstMismatch;
+        private long mElapsedNanos;
+
+        public int getGestureCount() {
+            return mGestureCount;
+        }
+
+        public int getMismatchCount() {
+            return mMismatchCount;
+        }
+
+        /**
+         * @return description of the first trace which does not produce the expected password, or null
+         */
+        public String getFirstMismatch() {
+            return mFirstMismatch;
+        }
+
+        public double getGesturesPerSecond() {
+            return mElapsedNanos > 0 ? mGestureCount * 1e9 / mElapsedNanos : 0;
+        }
+
+        public double getSamplesPerSecond() {
+            return mElapsedNanos > 0 ? mSampleCount * 1e9 / mElapsedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Result{ gestures = %d, mismatches = %d, %.0f gestures/s, %.0f samples/s }",
+                    mGestureCount, mMismatchCount, getGesturesPerSecond(), getSamplesPerSecond());
+        }
+    }
+}
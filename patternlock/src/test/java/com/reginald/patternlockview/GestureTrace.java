@@ -0,0 +1,160 @@
+package com.reginald.patternlockview;
+
+import java.util.Arrays;
+
+/**
+ * A recorded finger trace on a {@link PatternLockView} and the password it is expected to produce.
+ * Samples are in view coordinates, the first one is ACTION_DOWN and the last one is ACTION_UP.
+ * <p>
+ * One trace is one line of a corpus file: {@code expected|t,x,y;t,x,y;...}, where expected is the
+ * password string without brackets (e.g. {@code 0-1-2}, or empty if no password is expected),
+ * and t is the event time in millis.
+ */
+public final class GestureTrace {
+    private final int[] mExpected;
+    private final long[] mTimes;
+    private final float[] mXs;
+    private final float[] mYs;
+
+    public GestureTrace(int[] expected, long[] times, float[] xs, float[] ys) {
+        if (times.length < 2 || times.length != xs.length || times.length != ys.length) {
+            throw new IllegalArgumentException("a trace needs at least 2 samples with the same count of t, x and y!");
+        }
+        mExpected = expected;
+        mTimes = times;
+        mXs = xs;
+        mYs = ys;
+    }
+
+    /**
+     * synthesize a trace which moves along straight lines through the centers of the nodes of the pattern.
+     *
+     * @param centerX        x of the center of every node
+     * @param centerY        y of the center of every node
+     * @param step           max distance between two samples in pixels
+     * @param sampleInterval time between two samples in millis
+     */
+    public static GestureTrace synthesize(Pattern pattern, float[] centerX, float[] centerY, float step,
+                                          long sampleInterval) {
+        int count = 1;
+        for (int i = 1; i < pattern.size(); i++) {
+            count += segmentSteps(pattern, centerX, centerY, i, step);
+        }
+        // the up sample stays at the last node
+        count++;
+
+        long[] times = new long[count];
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        int first = pattern.get(0);
+        xs[0] = centerX[first];
+        ys[0] = centerY[first];
+        int index = 1;
+        for (int i = 1; i < pattern.size(); i++) {
+            int from = pattern.get(i - 1);
+            int to = pattern.get(i);
+            int steps = segmentSteps(pattern, centerX, centerY, i, step);
+            for (int s = 1; s <= steps; s++) {
+                float fraction = (float) s / steps;
+                xs[index] = centerX[from] + (centerX[to] - centerX[from]) * fraction;
+                ys[index] = centerY[from] + (centerY[to] - centerY[from]) * fraction;
+                index++;
+            }
+        }
+        xs[index] = xs[index - 1];
+        ys[index] = ys[index - 1];
+        for (int i = 0; i < count; i++) {
+            times[i] = i * sampleInterval;
+        }
+        return new GestureTrace(pattern.toArray(), times, xs, ys);
+    }
+
+    private static int segmentSteps(Pattern pattern, float[] centerX, float[] centerY, int index, float step) {
+        int from = pattern.get(index - 1);
+        int to = pattern.get(index);
+        double length = Math.hypot(centerX[to] - centerX[from], centerY[to] - centerY[from]);
+        return Math.max(1, (int) Math.ceil(length / step));
+    }
+
+    /**
+     * @param line a line of a corpus file
+     */
+    public static GestureTrace parse(String line) {
+        int split = line.indexOf('|');
+        if (split < 0) {
+            throw new IllegalArgumentException("invalid trace: " + line);
+        }
+        String expected = line.substring(0, split).trim();
+        int[] ids;
+        if (expected.isEmpty()) {
+            ids = new int[0];
+        } else {
+            String[] values = expected.split("-");
+            ids = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ids[i] = Integer.parseInt(values[i].trim());
+            }
+        }
+
+        String[] samples = line.substring(split + 1).trim().split(";");
+        long[] times = new long[samples.length];
+        float[] xs = new float[samples.length];
+        float[] ys = new float[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            String[] values = samples[i].split(",");
+            if (values.length != 3) {
+                throw new IllegalArgumentException("invalid sample: " + samples[i]);
+            }
+            times[i] = Long.parseLong(values[0].trim());
+            xs[i] = Float.parseFloat(values[1].trim());
+            ys[i] = Float.parseFloat(values[2].trim());
+        }
+        return new GestureTrace(ids, times, xs, ys);
+    }
+
+    /**
+     * @return a line of a corpus file
+     */
+    public String toLine() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < mExpected.length; i++) {
+            if (i != 0) {
+                builder.append('-');
+            }
+            builder.append(mExpected[i]);
+        }
+        builder.append('|');
+        for (int i = 0; i < mTimes.length; i++) {
+            if (i != 0) {
+                builder.append(';');
+            }
+            builder.append(mTimes[i]).append(',').append(mXs[i]).append(',').append(mYs[i]);
+        }
+        return builder.toString();
+    }
+
+    public int[] getExpected() {
+        return mExpected;
+    }
+
+    public int getSampleCount() {
+        return mTimes.length;
+    }
+
+    public long getTime(int index) {
+        return mTimes[index];
+    }
+
+    public float getX(int index) {
+        return mXs[index];
+    }
+
+    public float getY(int index) {
+        return mYs[index];
+    }
+
+    @Override
+    public String toString() {
+        return "GestureTrace{ expected = " + Arrays.toString(mExpected) + ", samples = " + mTimes.length + " }";
+    }
+}
@@ -0,0 +1,167 @@
+package com.reginald.patternlockview;
+
+import android.util.AttributeSet;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * Replays corpora of finger traces through a laid-out {@link PatternLockView} on the JVM and reports
+ * the throughput. Synthesized traces follow random valid patterns from {@link PatternSpace}.
+ * <p>
+ * ./gradlew :patternlock:testDebugUnitTest -Dpatternlock.replay.count=50000
+ * ./gradlew :patternlock:testDebugUnitTest -Dpatternlock.replay.corpus=/path/to/traces.txt
+ * <p>
+ * Traces of a corpus file (see {@link GestureTrace}) are replayed on a 1080 * 1080 view with
+ * {@code patternlock.replay.size} (default 3) nodes per row, in continuous touch mode.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 22)
+public class PatternLockReplayTest {
+    private static final int VIEW_SIZE = 1080;
+    private static final String NODE_SIZE = "60px";
+    private static final int MIN_LENGTH = 4;
+    private static final long SAMPLE_INTERVAL = 8;
+
+    private static final int TRACE_COUNT = Integer.getInteger("patternlock.replay.count", 2000);
+
+    @Test
+    public void replayAutoLink() {
+        PatternLockView lockView = newLockView(3, 3, true, false);
+        // dense samples, one sample per event
+        replay(lockView, newCorpus(lockView, new PatternSpace(3, MIN_LENGTH), 20f), 1, "3 * 3 auto link");
+    }
+
+    @Test
+    public void replayBatchedContinuousTouch() {
+        PatternLockView lockView = newLockView(3, 3, false, true);
+        // samples far apart and batched, nodes between them are only found on the finger path
+        replay(lockView, newCorpus(lockView, new PatternSpace(3, MIN_LENGTH), 150f), 4, "3 * 3 continuous touch");
+    }
+
+    @Test
+    public void replayRectangularGrid() {
+        PatternLockView lockView = newLockView(3, 4, true, true);
+        PatternSpace space = new PatternSpace(new PatternGrid(3, 4), MIN_LENGTH, 12);
+        replay(lockView, newCorpus(lockView, space, 100f), 3, "3 * 4 auto link, continuous touch");
+    }
+
+    @Test
+    public void batchedNodesTouched() {
+        PatternLockView lockView = newLockView(3, 3, true, true);
+        final int[] touched = new int[9];
+        final int[] touchedCount = new int[1];
+        lockView.setOnNodesTouchListener(new PatternLockView.OnNodesTouchListener() {
+            @Override
+            public void onNodesTouched(int[] nodeIds, int start, int count) {
+                System.arraycopy(nodeIds, start, touched, touchedCount[0], count);
+                touchedCount[0] += count;
+            }
+        });
+        GestureReplayer replayer = new GestureReplayer(lockView, 4);
+        for (GestureTrace trace : newCorpus(lockView, new PatternSpace(3, MIN_LENGTH), 150f).subList(0, 200)) {
+            touchedCount[0] = 0;
+            replayer.replay(trace);
+            // pending nodes are delivered before the reset
+            lockView.reset();
+            assertArrayEquals(trace.getExpected(), Arrays.copyOf(touched, touchedCount[0]));
+        }
+    }
+
+    @Test
+    public void replayMissedGesture() {
+        PatternLockView lockView = newLockView(3, 3, true, false);
+        GestureReplayer replayer = new GestureReplayer(lockView, 1);
+        // between the nodes, never touches one
+        GestureTrace trace = new GestureTrace(new int[0], new long[]{0, 8, 16},
+                new float[]{360, 370, 380}, new float[]{360, 360, 360});
+        assertNull(replayer.replay(trace));
+    }
+
+    @Test
+    public void replayCorpusFile() throws IOException {
+        String path = System.getProperty("patternlock.replay.corpus");
+        assumeNotNull(path);
+
+        int size = Integer.getInteger("patternlock.replay.size", 3);
+        List<GestureTrace> traces = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    traces.add(GestureTrace.parse(line));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        replay(newLockView(size, size, false, true), traces, 1, path);
+    }
+
+    @Test
+    public void traceLineRoundTrip() {
+        PatternLockView lockView = newLockView(3, 3, false, false);
+        List<GestureTrace> traces = newCorpus(lockView, new PatternSpace(3, MIN_LENGTH), 20f);
+        for (int i = 0; i < 100; i++) {
+            GestureTrace trace = traces.get(i);
+            assertEquals(trace.toLine(), GestureTrace.parse(trace.toLine()).toLine());
+        }
+    }
+
+    private static void replay(PatternLockView lockView, List<GestureTrace> traces, int batchSize, String name) {
+        GestureReplayer replayer = new GestureReplayer(lockView, batchSize);
+        // warm up the touch pipeline before measuring
+        replayer.replayAll(traces.subList(0, Math.min(traces.size(), 200)));
+        GestureReplayer.Result result = replayer.replayAll(traces);
+        System.out.println(name + ": " + result);
+        assertEquals(result.getFirstMismatch(), 0, result.getMismatchCount());
+    }
+
+    private static PatternLockView newLockView(int rowCount, int columnCount, boolean autoLink,
+                                               boolean continuousTouch) {
+        AttributeSet attrs = Robolectric.buildAttributeSet()
+                .addAttribute(R.attr.lock_rows, String.valueOf(rowCount))
+                .addAttribute(R.attr.lock_columns, String.valueOf(columnCount))
+                .addAttribute(R.attr.lock_nodeSize, NODE_SIZE)
+                .addAttribute(R.attr.lock_autoLink, String.valueOf(autoLink))
+                .addAttribute(R.attr.lock_continuousTouch, String.valueOf(continuousTouch))
+                .build();
+        PatternLockView lockView = new PatternLockView(RuntimeEnvironment.application, attrs);
+        lockView.measure(View.MeasureSpec.makeMeasureSpec(VIEW_SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(VIEW_SIZE, View.MeasureSpec.AT_MOST));
+        lockView.layout(0, 0, lockView.getMeasuredWidth(), lockView.getMeasuredHeight());
+        return lockView;
+    }
+
+    private static List<GestureTrace> newCorpus(PatternLockView lockView, PatternSpace space, float step) {
+        float[] centerX = GestureReplayer.getNodeCenterX(lockView);
+        float[] centerY = GestureReplayer.getNodeCenterY(lockView);
+        Random random = new Random(TRACE_COUNT);
+        List<GestureTrace> traces = new ArrayList<>(TRACE_COUNT);
+        for (int i = 0; i < TRACE_COUNT; i++) {
+            traces.add(GestureTrace.synthesize(space.sample(random), centerX, centerY, step, SAMPLE_INTERVAL));
+        }
+        return traces;
+    }
+}
@@ -70,8 +70,8 @@ public class DemoActivity extends Activity {
         mPatternShowButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                mCurLockView.showPassword(mPassword.list);
-                mPasswordTextView.setText("show password: " + mPassword.string);
+                mCurLockView.showPassword(mPassword.toArray());
+                mPasswordTextView.setText("show password: " + mPassword.getString());
             }
         });
 
@@ -83,14 +83,14 @@ public class DemoActivity extends Activity {
                     mCurLockView.stopPasswordAnim();
                 } else {
                     mPatternShowAnimButton.setText("stop password anim");
-                    mCurLockView.showPasswordWithAnim(mPassword.list, -1, 400l,
+                    mCurLockView.showPasswordWithAnim(mPassword.toArray(), -1, 400l,
                             new PatternLockView.onAnimFinishListener() {
                                 @Override
                                 public void onFinish(boolean isStopped) {
                                     mPatternShowAnimButton.setText("start password anim");
                                 }
                             });
-                    mPasswordTextView.setText("show password animation: " + mPassword.string);
+                    mPasswordTextView.setText("show password animation: " + mPassword.getString());
                 }
             }
         });
@@ -136,9 +136,9 @@ public class DemoActivity extends Activity {
         mCurLockView.setCallBack(new PatternLockView.CallBack() {
             @Override
             public int onFinish(PatternLockView.Password password) {
-                Log.d(TAG, "password length " + password.list.size());
-                if (password.string.length() != 0) {
-                    mPasswordTextView.setText("password is " + password.string);
+                Log.d(TAG, "password length " + password.size());
+                if (password.getString().length() != 0) {
+                    mPasswordTextView.setText("password is " + password.getString());
                 } else {
                     mPasswordTextView.setText("please enter your password!");
                 }